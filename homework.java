@@ -1,11 +1,38 @@
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,16 +50,20 @@ import java.util.logging.Logger;
  ****************************************************************************/
 class Node{
     //TODO: SHOULD COMPARABLE BE IMPLEMENTED TO RETURN THE NODE WITH BEST VALUE SO FAR BY SORTING?
-    private static final int EMPTY_CELL = -1;
-    private final ArrayList<ConnectedComponent> actionsList;
-    private final String player;
-    private final int[][] currentState;
-    private final int depth;
-    private final double maxCurrValue;
-    private final double minCurrValue;
-    private double maxPotentialValue;
-    private double minPotentialValue;
-    private double terminalValue;
+    private final ActionList actionsList;
+    private String player;
+    private Board currentState;
+    private int depth;
+    private int maxCurrValue;
+    private int minCurrValue;
+    private long hashKey;
+    //True if the state is hashed by its mirror image (table moves are then reflected)
+    private boolean mirrored;
+    //Lazy expansion: a child's actions are generated from its parent's on first use
+    private boolean expanded;
+    private Node parentNode;
+    private int touchedColumns;
+    private ComponentLabeller labeller;
     
     /**
      * Node constructor, instantiates a new node
@@ -40,171 +71,119 @@ class Node{
      * @param depth the depth of the node
      * @param maxCurrValue the "MAX" value of the node
      * @param minCurrValue the "MIN" value of the node
-     * @param maxPotentialValue the potential value of "MAX" for the given node
-     * @param minPotentialValue the potential value of "MIN" for the given node
+     * @param player the player to move ("MAX" or "MIN")
+     */
+    public Node(Board currentState, int depth, int maxCurrValue, int minCurrValue, String player){
+        this.actionsList = new ActionList();
+        load(currentState, depth, maxCurrValue, minCurrValue, player, new ComponentLabeller());
+    }
+    
+    /**
+     * Node constructor for a reusable search ply, filled in later by load
+     */
+    Node(){
+        this.actionsList = new ActionList();
+    }
+    
+    /**
+     * load (re)initializes the node for a state. The search reuses one node per depth
+     * and reloads it every time a move is made on the shared search board
+     * @param currentState the input state
+     * @param depth the depth of the node
+     * @param maxCurrValue the "MAX" value of the node
+     * @param minCurrValue the "MIN" value of the node
+     * @param player the player to move ("MAX" or "MIN")
+     * @param labeller the (reusable) labeller generating the list of actions
+     */
+    public final void load(Board currentState, int depth, int maxCurrValue, int minCurrValue, String player, ComponentLabeller labeller){
+        setState(currentState, depth, maxCurrValue, minCurrValue, player);
+        //Generate the list of connected components for the current Node (with the scores of its potential value)
+        labeller.label(currentState, actionsList);
+        this.expanded = true;
+    }
+    
+    /**
+     * loadChild (re)initializes the node for the state reached by a move from a parent node.
+     * The node is expanded lazily: its actions and potential value are only computed (by
+     * updating the parent's list of actions) when first needed, so a child cut off by the
+     * transposition table never labels its board
+     * @param parent the node the move was made from (its actions list must stay valid until expanded)
+     * @param touchedColumns the bit mask of the columns touched by the move
+     * @param currentState the state after the move
+     * @param maxCurrValue the "MAX" value of the node
+     * @param minCurrValue the "MIN" value of the node
+     * @param player the player to move ("MAX" or "MIN")
+     * @param labeller the (reusable) labeller updating the list of actions
+     */
+    public final void loadChild(Node parent, int touchedColumns, Board currentState, int maxCurrValue, int minCurrValue, String player, ComponentLabeller labeller){
+        setState(currentState, parent.getDepth() + 1, maxCurrValue, minCurrValue, player);
+        this.parentNode = parent;
+        this.touchedColumns = touchedColumns;
+        this.labeller = labeller;
+        this.expanded = false;
+    }
+    
+    /**
+     * expand generates the actions list and potential value of a lazily loaded node
+     * (does nothing if the node is already expanded)
      */
-    public Node(int[][] currentState, int depth, double maxCurrValue, double minCurrValue, String player){
-        this.actionsList = new ArrayList<>();
+    public final void expand(){
+        if(expanded){
+            return;
+        }
+        //Update the parent's list of connected components around the touched columns (and the scores of its potential value)
+        labeller.relabel(currentState, parentNode.getActionsList(), touchedColumns, actionsList);
+        this.expanded = true;
+        this.parentNode = null;
+    }
+    
+    //Sets the fields describing the state
+    private void setState(Board currentState, int depth, int maxCurrValue, int minCurrValue, String player){
+        this.hashKey = ZobristHash.hashState(currentState, player);
+        this.mirrored = currentState.isMirrored();
         this.player = player;
         this.depth = depth;
         this.maxCurrValue = maxCurrValue;
         this.minCurrValue = minCurrValue;
         this.currentState = currentState;
-        this.maxPotentialValue = 0;
-        this.minPotentialValue = 0;
-        //Generate the list of connected components for the current Node
-        generateActions();
-        //Calculate Potential Value using generated list of actions
-        calculatePotentialValue();
     }
     
     /**
-     * calculatePotentialValue calculates the Potential Value for Min and Max of the current Node
-     */
-    public final void calculatePotentialValue(){
-        //Calculate potential value of the node
-        //This function takes the sorted actions list and estimates the value of each player in the future
-        if(player.contentEquals("MAX")){
-            for(int i = 0; i < actionsList.size(); i++){
-                //Check if current index is even, add to Max
-                if(i % 2 == 0){
-                    maxPotentialValue+= actionsList.get(i).componentScore();
-                }
-                //if current index is odd, add value to Min
-                else{
-                    minPotentialValue+= actionsList.get(i).componentScore();
-                }
-            }
-        }
-        else{
-            for(int i = 0; i < actionsList.size(); i++){
-                //Check if current index is even, add to Max
-                if(i % 2 == 0){
-                    minPotentialValue+= actionsList.get(i).componentScore();
-                }
-                //if current index is odd, add value to Min
-                else{
-                    maxPotentialValue+= actionsList.get(i).componentScore();
-                }
-            }
-        }
-    }
-    
-    /**
-     * generateActions takes in the state and recursively generates a list of all the connected
-     * components in the given state. We will loop over the resulting list in our 
-     * minimax code to generate the DFS tree.
-     * @param currentNode the node to generate actions for
-     */
-    public final void generateActions(){
-        //Store length of state 
-        int stateLength = currentState.length;
-        //Initialize boolean array of visited cells (all cells initially false)
-        boolean[][] visitedCellsArray = new boolean[stateLength][stateLength];
-        //Loop through state and recurse
-        for(int i = 0; i < stateLength; i++){
-            for(int j = 0; j < stateLength; j++){
-                if(!visitedCellsArray[i][j] && currentState[i][j] != EMPTY_CELL){
-                    //New Board Position 
-                    BoardPosition initialPosition = new BoardPosition(currentState[i][j], i, j);
-                    //Create new connected Component
-                    ConnectedComponent newComponent = new ConnectedComponent();
-                    //Recurse with the helper function
-                    generateActionsRecursive(initialPosition, visitedCellsArray, newComponent, currentState);
-                    //Add connected component to the actions list
-                    actionsList.add(newComponent);
-                }
-            }
-        }
-        //Sort the actions list by size of the connected components
-        Collections.sort(actionsList, Collections.reverseOrder());
-    }
-    
-    /**
-     * generateActionsRecursive is the helper recursive function
-     * @param newPosition the next Board position
-     * @param visitedArray the array of booleans
-     * @param connectedComp the connected component
-     * @param currentState the currents state configuration
-     */
-    public static void generateActionsRecursive(BoardPosition newPosition, boolean[][] visitedArray, ConnectedComponent connectedComp, int[][] currentState){
-        //Get row and column of Board Position
-        int row = newPosition.getRow();
-        int col = newPosition.getCol();
-        //Get the fruit type of the new Board Position
-        int fruitType = newPosition.getFruitType();
-        //Set the current Board Position (in the visited cells array) to true
-        visitedArray[row][col] = true;
-        //Check if the position is legal: next row
-        if(isLegalBP(fruitType, row + 1, col, currentState, visitedArray)){
-            //Create new Board Position and set cell to visited
-            BoardPosition nextPosition = new BoardPosition(fruitType, row + 1, col);
-            visitedArray[row + 1][col] = true;
-            //Recurse on the new legal position
-            generateActionsRecursive(nextPosition, visitedArray, connectedComp, currentState);
-        }
-        //Check if the position is legal: prior row
-        if(isLegalBP(fruitType, row - 1, col, currentState, visitedArray)){
-            //Create new Board Position and set cell to visited
-            BoardPosition nextPosition = new BoardPosition(fruitType, row - 1, col);
-            visitedArray[row - 1][col] = true;
-            //Recurse on the new legal position
-            generateActionsRecursive(nextPosition, visitedArray, connectedComp, currentState);
-        }
-        //Check if the position is legal: next column
-        if(isLegalBP(fruitType, row, col + 1, currentState, visitedArray)){
-            //Create new Board Position and set cell to visited
-            BoardPosition nextPosition = new BoardPosition(fruitType, row, col + 1);
-            visitedArray[row][col + 1] = true;
-            //Recurse on the new legal position
-            generateActionsRecursive(nextPosition, visitedArray, connectedComp, currentState);
-        }
-        //Check if the position is legal: prior column
-        if(isLegalBP(fruitType, row, col - 1, currentState, visitedArray)){
-            //Create new Board Position and set cell to visited
-            BoardPosition nextPosition = new BoardPosition(fruitType, row, col - 1);
-            visitedArray[row][col - 1] = true;
-            //Recurse on the new legal position
-            generateActionsRecursive(nextPosition, visitedArray, connectedComp, currentState);   
-        }
-        //If position is legal, add to the connected component
-        connectedComp.addPosition(newPosition);
-    }
-    
-    /**
-     * isLegalBP returns true if the next available cell is a legal move
-     * @param fruitType the type of fruit
-     * @param currRow the current row
-     * @param currCol the current column
-     * @param currentState the 2D state configuration
-     * @param visitedArray the array of boolean values to tell whether we have already visited the cell
-     * @return true if the next available cell is a legal move
-     */
-    public static boolean isLegalBP(int fruitType, int currRow, int currCol, int[][] currentState, boolean[][] visitedArray){
-        //Store the length of the state
-        int stateLength = currentState.length;
-        //Return true if the next cell is a legal move (i.e if it is within the limits of the board)
-        return (currRow >= 0) && (currRow < stateLength) && (currCol >= 0) && (currCol < stateLength) && (!visitedArray[currRow][currCol])
-                &&(currentState[currRow][currCol] != EMPTY_CELL) && (fruitType == currentState[currRow][currCol]);
-    }
-    
-    /**
-     * getTerminalValue calculates the Terminal value of the node
+     * getTerminalValue calculates the Terminal value of the node: the running score difference
+     * plus the potential value, the players taking the sorted components in turns (the player
+     * to move gets the even ones). The actions list keeps the alternating sum of their scores
      * @return the terminal value of the node
      */
-    public double getTerminalValue(){
-        this.terminalValue = (this.maxCurrValue + this.maxPotentialValue) - (this.minCurrValue + this.minPotentialValue);
-        return this.terminalValue;
+    public int getTerminalValue(){
+        expand();
+        int potentialDifference = player.contentEquals("MAX") ? actionsList.getAlternatingScore() : -actionsList.getAlternatingScore();
+        return maxCurrValue - minCurrValue + potentialDifference;
     }
     
     /**
      * getState gets the state configuration of the board
      * @return the state configuration of the board
      */
-    public int[][] getState(){
+    public Board getState(){
         return this.currentState;
     }
     
+    /**
+     * getHashKey returns the Zobrist key of the state and player to move
+     * @return the Zobrist key of the Node
+     */
+    public long getHashKey(){
+        return hashKey;
+    }
+    
+    /**
+     * isMirrored returns true if the key of the Node is the key of its mirrored state
+     * @return true if the Node is hashed in the mirrored orientation
+     */
+    public boolean isMirrored(){
+        return mirrored;
+    }
+    
     /**
      * getPlayer returns the player type (MAX or MIN) of the Node
      * @return the player type (MAX or MIN) of the Node
@@ -214,18 +193,30 @@ class Node{
     }
     
     /**
-     * getActionsList return the ArrayList of connected Components
-     * @return return the ArrayList of connected Components
+     * getActionsList return the list of connected Components, sorted by size
+     * @return return the list of connected Components
      */
-    public ArrayList<ConnectedComponent> getActionsList(){
+    public ActionList getActionsList(){
+        expand();
         return actionsList;
     }
     
+    /**
+     * getComponent returns a connected component of the actions list as a list of Board Positions
+     * @param index the index of the component in the actions list
+     * @return the connected component
+     */
+    public ConnectedComponent getComponent(int index){
+        expand();
+        return actionsList.toConnectedComponent(index);
+    }
+    
     /**
      * getNumChildren returns the number of connected components in the actions List
      * @return the number of connected components in the actions List
      */
     public int getNumChildren(){
+        expand();
         return actionsList.size();
     }
     
@@ -241,7 +232,7 @@ class Node{
      * getMaxValue returns the Max value of the node (running sum)
      * @return the Max value of the node
      */
-    public double getMaxValue(){
+    public int getMaxValue(){
         return maxCurrValue;
     }
     
@@ -249,7 +240,7 @@ class Node{
      * getMinValue returns the Min value of the node (running sum)
      * @return the Min value of the node
      */
-    public double getMinValue(){
+    public int getMinValue(){
         return minCurrValue;
     }
     
@@ -257,16 +248,18 @@ class Node{
      * getMaxPotential returns the downwards potential for the "MAX" player
      * @return the downwards potential for the "MAX" player
      */
-    public double getMaxPotential(){
-        return maxPotentialValue;
+    public int getMaxPotential(){
+        expand();
+        return player.contentEquals("MAX") ? actionsList.getEvenScore() : actionsList.getOddScore();
     }
     
     /**
      * getMinPotential returns the downwards potential for the "MIN" player
      * @return the downwards potential for the "MIN" player
      */
-    public double getMinPotential(){
-        return minPotentialValue;
+    public int getMinPotential(){
+        expand();
+        return player.contentEquals("MAX") ? actionsList.getOddScore() : actionsList.getEvenScore();
     }
 }
 
@@ -314,8 +307,8 @@ class ConnectedComponent implements Comparable{
      * componentScore returns the value of the connected component
      * @return the value of the connected component (number of fruits squared)
      */
-    public double componentScore(){
-        return Math.pow((double) connectedComp.size(), 2.0);
+    public int componentScore(){
+        return connectedComp.size() * connectedComp.size();
     }
 
     @Override
@@ -423,370 +416,4722 @@ class BoardPosition{
     }
 }
 
-/********************************************************************************
- * The homework class is the "main" class of the homework (the only public class)
- * It contains the main function
- ********************************************************************************/
-public class homework {
-    private static final double SEC_TO_MS = 1000;    
-    private static final int EMPTY_CELL = -1;
-    private static final int BLANK_CELL = -10;
-    private static final double INFINITY = Double.POSITIVE_INFINITY;
-    private static final double NEG_INFINITY = Double.NEGATIVE_INFINITY;
-    private static final double BREAK_RUN = Double.NEGATIVE_INFINITY;
-    private static final int GLOBAL_MAX_DEPTH = 8;
-   //Variables to store index and value of best move
-    private static int bestIndex = 0;
-    private static double alphaBetaResult;
-    //To count number of empty cells in board
-    private static int numEmpty;
-    private static boolean timeLeft = true;
-    
-    //TESTING VARIABLES************************
-    private static int numNodes = 0;
-    
-    
+/*******************************************************************************
+ * The ActionList class stores the connected components of a state without any
+ * per-component objects: the cells of every component are stored contiguously
+ * in one shared array of cell indices, and each component is an offset and a
+ * size into that array. A component reused unchanged from the parent state
+ * points into the parent's array instead of copying its cells. Components are
+ * accessed in order of decreasing size (ties in the order they were found,
+ * scanning the board row by row).
+ *******************************************************************************/
+class ActionList{
+    private int[] cells = new int[0];
+    private int[][] cellSources = new int[0][];
+    private int[] starts = new int[0];
+    private int[] sizes = new int[0];
+    private int[] fruitTypes = new int[0];
+    private int[] anchors = new int[0];
+    private int[] mirrorAnchors = new int[0];
+    private int[] columnMasks = new int[0];
+    private int[] order = new int[0];
+    private int count;
+    private int boardSize;
+    //Sum of the scores of all the components, and alternating sum (+ - + ...) in sorted order
+    private int totalScore;
+    private int alternatingScore;
+
     /**
-     * generateNewState replaces all items of the connected component from the
-     * selected board position, applies gravity, and returns a new node
-     * @param currentNode the input Node
-     * @param selectedCompIndex the index of the actions list to generate new node with
-     * @return thew new Node after replacing selected cell, its Connected Comp. and applying gravity
+     * reset empties the list, making sure it can hold the components of a board
+     * @param boardSize the size of the board
      */
-    public static Node generateNewNode(Node currentNode, int selectedCompIndex){
-        //Instantiate new Node to null
-        Node newNode = null;
-        //Get Length of State
-        int stateLength = currentNode.getState().length;
-        //Get the player of the current node
-        String player = currentNode.getPlayer();
-        //Instantiate new Player
-        String newPlayer;
-        if(player.contentEquals("MAX")){
-            newPlayer = "MIN";
-        }
-        else{
-            newPlayer = "MAX";
-        }
-        //Get the list of Connected Components of the Node
-        ArrayList<ConnectedComponent> actionsList = currentNode.getActionsList();
-        //If you are at an empyt assignment (terminal node) return null
-        if(actionsList.isEmpty()){
-            return null;
-        }
-        else{
-            //Get the selected component (actions list in order of size)
-            ConnectedComponent selectedComponent = actionsList.get(selectedCompIndex);
-            //Create boolean array to track number of removed cells per column
-            boolean[] removedInCol = new boolean[stateLength];
-            //Generate new State for new node
-            int[][] newState = new int[stateLength][stateLength];
-            //Populate state with state of current Node
-            for(int i = 0; i < stateLength; i++){
-                for(int j = 0; j < stateLength; j++){
-                    newState[i][j] = currentNode.getState()[i][j];
-                }
-            }
-            
-            /*********************REMOVE CONNECTED COMPONENT*******************/
-            //Remove the cells from the selected component from the new State
-            for(int i = 0; i < selectedComponent.getNumComp(); i++){
-                newState[selectedComponent.getBoardPosition(i).getRow()][selectedComponent.getBoardPosition(i).getCol()] = BLANK_CELL;
-                //Set column to true in boolean array
-                removedInCol[selectedComponent.getBoardPosition(i).getCol()] = true;
-            }
-            /*********************APPLY GRAVITY TO STATE*******************/
-            //Loop until you find a column with a removed Board Position
-            for(int col = 0; col < stateLength; col++){
-                //If the column contains removed cells, apply gravity
-                if(removedInCol[col]){
-                    //Loop from the bottom of the array to the top
-                    for(int row = stateLength - 1; row >= 0; row--){
-                        //Find the first removed cell
-                        if(newState[row][col] == BLANK_CELL){
-                            //Local variable for number of cells above
-                            int numbAbove = 0;
-                            for(int rowCount = row; rowCount >= 0; rowCount--){
-                                //Check if we
-                                if(newState[rowCount][col] == BLANK_CELL){
-                                    numbAbove++;
-                                }
-                                else{ break;}
-                            }
-                            //Use the number of blank cells to apply required "gravity"
-                            for(int blankCell = row; blankCell >=0; blankCell--){
-                                //If there are blank cells all the way to the top, change all to '*'
-                                if(blankCell - numbAbove < 0){
-                                    newState[blankCell][col] = EMPTY_CELL;        
-                                }
-                                else{
-                                    newState[blankCell][col] = newState[blankCell - numbAbove][col];
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            /*********************CALCULATE VALUE AND GENERATE NODES*******************/
-            //Get selected component Score and initialize other value parameters
-             double currCompValue = selectedComponent.componentScore();
-             //Instantiate the value of the node (for type of player)
-             double totalValue;
-            //If the newPlayer is MIN, add value of component removed at prior depth to MAX's running sum
-            if(newPlayer.contentEquals("MIN")){
-               //Generate new value for new Node given value of selected component
-               totalValue = currentNode.getMaxValue() + currCompValue;
-               //Update new Max Node
-               newNode = new Node(newState, currentNode.getDepth() + 1, totalValue, currentNode.getMinValue(), newPlayer);
-            }
-            //If the newPlayer is MAX, add value of component removed at prior depth to MIN's running sum
-            else{
-                //Generate new value for new Node
-                totalValue = currentNode.getMinValue() + currCompValue;
-                //Update new Min Node
-                newNode = new Node(newState, currentNode.getDepth() + 1, currentNode.getMaxValue(), totalValue, newPlayer);
-            }
+    void reset(int boardSize){
+        int numCells = boardSize * boardSize;
+        if(cells.length < numCells){
+            cells = new int[numCells];
+            cellSources = new int[numCells][];
+            starts = new int[numCells];
+            sizes = new int[numCells];
+            fruitTypes = new int[numCells];
+            anchors = new int[numCells];
+            mirrorAnchors = new int[numCells];
+            columnMasks = new int[numCells];
+            order = new int[numCells];
         }
-        return newNode;
+        this.boardSize = boardSize;
+        this.count = 0;
+        this.totalScore = 0;
+        this.alternatingScore = 0;
     }
-    
-    /*********************ALPHA-BETA PRUNNING*******************/
 
     /**
-     * alphaBeta returns the minimax value and updates the index of the chosen solution
-     * @param currNode the node on which we are running alpha-beta "prunning"
-     * @param alpha the value of alpha
-     * @param beta the value of beta
-     * @param maxDepth the maximum depth of search
-     * @param timeLimit the time limit
-     * @return the alpha beta value. Also updates the bestIndex variable to generate output node
+     * addComponent appends a component (in the order it was found) whose cells are
+     * stored in an array (this list's cells array, or the one of the parent list)
+     * @param source the array holding the cells of the component
+     * @param start the offset of the first cell of the component
+     * @param size the number of cells of the component
+     * @param fruitType the fruit type of the component
+     * @param anchor the row-major index (row * boardSize + col) of the top-left cell of the component
+     * @param mirrorAnchor the anchor of the component on the mirrored board
+     * @param columnMask the bit mask of the columns the component has cells in
      */
-    public static double alphaBeta(Node currNode, double alpha, double beta, int maxDepth, double timeLimit){
-        //Check if you have run out of time, return neg_infinity
-        double currentTime = System.currentTimeMillis();
-        if(currentTime >= timeLimit){
-            return BREAK_RUN;
-        }
-        //Test for the cutoff requirements
-        if(cutOffSearch(currNode, maxDepth)){
-            //Return the terminal value of the node
-            return currNode.getTerminalValue();
-        }
-        //Get the current player from the Node
-        String player = currNode.getPlayer();
-        //If player is MAX, set v <- -INF, recurse through children
-        if(player.contentEquals("MAX")){
-            //Instantiate v to negative infinity
-            double value = NEG_INFINITY;
-            //Get actions fro current Node
-            ArrayList<ConnectedComponent> actionsList = currNode.getActionsList();
-            //Loop through actions list
-            for(int i = 0; i < actionsList.size(); i++){
-                //Generate new node
-                Node newNode = generateNewNode(currNode, i);
-                
-                //TEST***********************************************
-                numNodes++;
+    void addComponent(int[] source, int start, int size, int fruitType, int anchor, int mirrorAnchor, int columnMask){
+        totalScore += size * size;
+        cellSources[count] = source;
+        starts[count] = start;
+        sizes[count] = size;
+        fruitTypes[count] = fruitType;
+        anchors[count] = anchor;
+        mirrorAnchors[count] = mirrorAnchor;
+        columnMasks[count] = columnMask;
+        count++;
+    }
 
-                //Set value to recurse on alphaBeta
-                value = alphaBeta(newNode, alpha, beta, maxDepth, timeLimit);
-                //Check if you have run out of time, return neg_infinity
-                if(value == BREAK_RUN){
-                    return BREAK_RUN;
-                }
-                if(value > alpha){
-                    alpha = value;
-                    //Save the value of the index at depth = 0
-                    if(currNode.getDepth() == 0){
-                        //Save the index of the best solution (at depth = 0)
-                        bestIndex = i;
-                    }
-                }
-                //Check if prunning possible
-                if(alpha >= beta){
-                    break;
-                }
-            }
-            //return the value
-            return alpha;
-        }
-        //If player is MIN, set v <- INF, recurse through children
-        else{
-            //Instantiate v to infinity
-            double value = INFINITY;
-            //Get actions fro current Node
-            ArrayList<ConnectedComponent> actionsList = currNode.getActionsList();
-            //Loop through actions list
-            for(int i = 0; i < actionsList.size(); i++){
-                //Generate new node
-                Node newNode = generateNewNode(currNode, i);
-                
-                //TEST***********************************************
-                numNodes++;
-                
-                //Set value to recurse on alphaBeta
-                value = alphaBeta(newNode, alpha, beta, maxDepth, timeLimit);
-                //Check if you have run out of time, and break the run
-                if(value == BREAK_RUN){
-                    return BREAK_RUN;
-                }
-                if(value < beta){
-                    //Set beta to value (since value < beta)
-                    beta = value;
-                    //Save the value of the index at depth = 0
-                    if(currNode.getDepth() == 0){
-                        //Save the index of the best solution (at depth = 0)
-                        bestIndex = i;
-                    }
-                }
-                //Check if prunning possible
-                if(alpha >= beta){ 
-                    break;
-                }
-            }
-            //return the value
-            return beta;
-        }
+    /**
+     * setAlternatingScore records the alternating sum of the scores in sorted order (the
+     * labeller adds it up while it sorts the components)
+     * @param alternatingScore the first score minus the second plus the third...
+     */
+    void setAlternatingScore(int alternatingScore){
+        this.alternatingScore = alternatingScore;
     }
-    
+
     /**
-     * cutOffSearch tests whether the current node meets the termination requirements
-     * @param newNode the node being tested
-     * @param maxDepth the maximum depth of search
-     * @return true iff we are at terminating conditions (leaf node or max depth)
+     * getAlternatingScore returns the alternating sum of the scores in sorted order: what the
+     * player to move scores more than the opponent if both take the largest component in turns
+     * @return the first score minus the second plus the third...
      */
-    public static boolean cutOffSearch(Node newNode, int maxDepth){
-        return ((newNode.getActionsList().isEmpty()) || (newNode.getDepth() >= maxDepth));
+    public int getAlternatingScore(){
+        return alternatingScore;
     }
-    
+
     /**
-     * printNode is a test method to print Nodes and other relevant information
-     * @param selectedMove 
-     * @param node 
+     * getEvenScore returns the sum of the scores at even positions in sorted order
+     * @return the sum of the first, third... scores
      */
-    public static void printNode(ConnectedComponent selectedMove, Node node){
-        //Print selected Move (BoardPosition.toString())
-        if(selectedMove != null){System.out.println("The selected Component: " + selectedMove.toString());}
-            char[] intToChar = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
-            for(int i = 0; i < node.getState().length; i++){
-                System.out.print(intToChar[i]);
-            }
-            System.out.println();
-            //Print Board after the move and applying gravity
-            for(int i = 0; i < node.getState().length; i ++){
-                for(int j = 0; j < node.getState().length; j++){
-                    if(node.getState()[i][j] == EMPTY_CELL){
-                        System.out.print("*");
-                    }
-                    else{
-                        System.out.print(node.getState()[i][j]);
-                    }
-                }
-                //Skip to next line of the board
-                System.out.println();
-            }
-            System.out.println("The player type of the node is: " + node.getPlayer());
-            System.out.println("The depth of this node is: " + node.getDepth());
-            System.out.println("The number of Connected Components is: " + node.getActionsList().size());
-            System.out.println("The actions list of this Node is: " + node.getActionsList());
-            System.out.println("The Max Value of the Node is:" + node.getMaxValue());
-            System.out.println("The Min Value of the Node is:" + node.getMinValue());
-            System.out.println("The Terminal Value of the Node is:" + node.getTerminalValue());
-            System.out.println("The Potential Max Value of the Node is:" + node.getMaxPotential());
-            System.out.println("The Potential Min Value of the Node is:" + node.getMinPotential());
-            System.out.println();
+    public int getEvenScore(){
+        return (totalScore + alternatingScore) / 2;
     }
-    
+
     /**
-     * printOutput prints the  output into an output file in the requested format
-     * @param selectedMove the board cell selected by the AI
-     * @param newBoard the board after the selected cell and its connected component
-     * has been removed from the board and gravity has been applied
+     * getOddScore returns the sum of the scores at odd positions in sorted order
+     * @return the sum of the second, fourth... scores
      */
-    public static void printOutput(String selectedMove, int[][] newBoard){
-        //Print selected Move (BoardPosition.toString())
-        System.out.println(selectedMove);
-        //Print Board after the move and applying gravity
-        for(int i = 0; i < newBoard.length; i ++){
-            for(int j = 0; j < newBoard.length; j++){
-                if(newBoard[i][j] == EMPTY_CELL){
-                    System.out.print("*");
-                }
-                else{
-                    System.out.print(newBoard[i][j]);
-                }
-            }
-            //Skip to next line of the board
-            System.out.println();
-        }
+    public int getOddScore(){
+        return (totalScore - alternatingScore) / 2;
     }
-    
+
     /**
-     * printOutFile prints the  output into an output file in the requested format
-     * @param selectedMove the board cell selected by the AI
-     * @param newBoard the board after the selected cell and its connected component
-     * has been removed from the board and gravity has been applied
+     * getCells returns the shared array of cell indices (the labeller writes into it)
+     * @return the array of cell indices
      */
-    public static void printOutFile(String selectedMove, int[][] newBoard){
-        PrintStream outputFileStream = null;
-        try {
-            outputFileStream = new PrintStream( new FileOutputStream("output.txt"));
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(homework.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        //Print selected Move (BoardPosition.toString())
-        outputFileStream.println(selectedMove);
-        //Print Board after the move and applying gravity
-        for(int i = 0; i < newBoard.length; i ++){
-            for(int j = 0; j < newBoard.length; j++){
-                if(newBoard[i][j] == EMPTY_CELL){
-                    outputFileStream.print("*");
-                }
-                else{
-                    outputFileStream.print(newBoard[i][j]);
-                }
-            }
-            //Skip to next line of the board
-            outputFileStream.println();
-        }
+    int[] getCells(){
+        return cells;
     }
-    
+
     /**
-     * timeAllocation generates the allocated time for the current configuration
-     * @param fruitNumArray
-     * @param boardSize the size of the board
-     * @param remainingTime the remaining time
-     * @param numEmpty the number of empty cells
-     * @param numComponents the number of components (for branching factor approximation)
-     * @return the allocated amount of seconds for the current run
+     * getCells returns the array holding the cells of a component (from getStart(index))
+     * @param index the index of the component (in order of size)
+     * @return the array holding the cells of the component
      */
-    public static double timeAllocation(int[] fruitNumArray, int boardSize, double remainingTime, int numEmpty, int numComponents){
-        //Calculate the average amount of fruits per fruit type
-        double allocatedTime;
-        double mean;
-        double variance;
-        double stdev;
-        double tempVariance = 0.0;
-        double sum = 0.0;
-        int fruitCount = 0;
-        double coeffOfVar;
-        //Calculate the sum
-        for(int i = 0; i < fruitNumArray.length; i++){
-            sum+= fruitNumArray[i];
-            if(fruitNumArray[i] != 0){
-                fruitCount++;
-            }
-        }
-        //calculate the mean
-        mean = (double) sum / fruitCount;
-        //Calculate the variance
-        for(int i = 0; i < fruitNumArray.length; i++){
-            if(fruitNumArray[i] != 0){
-                tempVariance+= Math.pow(fruitNumArray[i] - mean, 2);
-            }
-        }
-        //Calculate Variance
-        variance = tempVariance / fruitCount;
+    public int[] getCells(int index){
+        return cellSources[order[index]];
+    }
+
+    /**
+     * getOrder returns the array mapping a sorted index to the order components were found in
+     * @return the sort order array
+     */
+    int[] getOrder(){
+        return order;
+    }
+
+    /**
+     * getFoundSize returns the size of a component, by the order it was found in
+     * @param foundIndex the order the component was found in
+     * @return the number of cells of the component
+     */
+    int getFoundSize(int foundIndex){
+        return sizes[foundIndex];
+    }
+
+    /**
+     * getFoundAnchor returns the anchor of a component, by the order it was found in
+     * @param foundIndex the order the component was found in
+     * @return the row-major index of the top-left cell of the component
+     */
+    int getFoundAnchor(int foundIndex){
+        return anchors[foundIndex];
+    }
+
+    /**
+     * size returns the number of components
+     * @return the number of components
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * isEmpty returns true if there are no components (terminal state)
+     * @return true if there are no components
+     */
+    public boolean isEmpty(){
+        return count == 0;
+    }
+
+    /**
+     * getStart returns the offset in the cells array of the first cell of a component
+     * @param index the index of the component (in order of size)
+     * @return the offset of the first cell of the component
+     */
+    public int getStart(int index){
+        return starts[order[index]];
+    }
+
+    /**
+     * getComponentSize returns the number of cells of a component
+     * @param index the index of the component (in order of size)
+     * @return the number of cells of the component
+     */
+    public int getComponentSize(int index){
+        return sizes[order[index]];
+    }
+
+    /**
+     * getFruitType returns the fruit type of a component
+     * @param index the index of the component (in order of size)
+     * @return the fruit type of the component
+     */
+    public int getFruitType(int index){
+        return fruitTypes[order[index]];
+    }
+
+    /**
+     * getAnchor returns the row-major index (row * boardSize + col) of the top-left cell of a
+     * component, the first cell of the component met when scanning the board row by row
+     * @param index the index of the component (in order of size)
+     * @return the anchor of the component
+     */
+    public int getAnchor(int index){
+        return anchors[order[index]];
+    }
+
+    /**
+     * getMirrorAnchor returns the anchor of a component on the board reflected left to
+     * right: the row-major index of its top-right cell, counting columns from the right
+     * @param index the index of the component (in order of size)
+     * @return the anchor of the mirrored component
+     */
+    public int getMirrorAnchor(int index){
+        return mirrorAnchors[order[index]];
+    }
+
+    /**
+     * getCanonicalAnchor returns the anchor of a component in the orientation the board is
+     * hashed in, which identifies the move in entries shared by both orientations
+     * @param index the index of the component (in order of size)
+     * @param mirrored true if the board is hashed by its mirror image
+     * @return the anchor of the component in the canonical orientation
+     */
+    public int getCanonicalAnchor(int index, boolean mirrored){
+        return mirrored ? mirrorAnchors[order[index]] : anchors[order[index]];
+    }
+
+    /**
+     * getColumnMask returns the bit mask of the columns a component has cells in
+     * @param index the index of the component (in order of size)
+     * @return the column mask of the component
+     */
+    public int getColumnMask(int index){
+        return columnMasks[order[index]];
+    }
+
+    /**
+     * componentScore returns the value of a component
+     * @param index the index of the component (in order of size)
+     * @return the value of the component (number of fruits squared)
+     */
+    public int componentScore(int index){
+        int size = sizes[order[index]];
+        return size * size;
+    }
+
+    /**
+     * toConnectedComponent builds the list of Board Positions of a component (for output)
+     * @param index the index of the component (in order of size)
+     * @return the connected component
+     */
+    public ConnectedComponent toConnectedComponent(int index){
+        ConnectedComponent component = new ConnectedComponent();
+        int[] source = getCells(index);
+        int start = getStart(index);
+        for(int i = start; i < start + getComponentSize(index); i++){
+            //Cells are stored column-major, bottom-up (see Board)
+            int row = boardSize - 1 - (source[i] % boardSize);
+            component.addPosition(new BoardPosition(getFruitType(index), row, source[i] / boardSize));
+        }
+        return component;
+    }
+
+    //Function to visualize the components of the list
+    @Override
+    public String toString(){
+        StringBuilder components = new StringBuilder("[");
+        for(int i = 0; i < count; i++){
+            components.append(i == 0 ? "" : ", ").append(toConnectedComponent(i));
+        }
+        return components.append("]").toString();
+    }
+}
+
+/*******************************************************************************
+ * The ComponentLabeller class finds the connected components of a board with an
+ * explicit stack instead of recursion. Its buffers are reused between calls and
+ * visited cells are marked with a generation stamp, so labelling a board does
+ * not allocate. The stack replays the order of the former recursive search
+ * (down, up, right, left, cells added once their neighbours are done), so the
+ * first cell of each component is the same as before.
+ * After a move, relabel only recomputes the components near the columns the
+ * move touched, and reuses the parent's other components as they are.
+ *******************************************************************************/
+class ComponentLabeller{
+    private static final int NUM_DIRECTIONS = 4;
+    //Sizes, anchors and component indices are below 26 * 26 < 2^10
+    private static final int SORT_KEY_BITS = 10;
+    private static final int SORT_KEY_MASK = (1 << SORT_KEY_BITS) - 1;
+    private int[] stack = new int[0];
+    private byte[] directions = new byte[0];
+    private int[] visitedStamps = new int[0];
+    private int[] sizeCounts = new int[0];
+    private int[] newComponents = new int[0];
+    private int stamp;
+    //Anchor (in both orientations) and column mask of the last filled component
+    private int fillAnchor;
+    private int fillMirrorAnchor;
+    private int fillColumnMask;
+
+    /**
+     * label fills the actions list with the connected components of the board, sorted by size
+     * @param board the board
+     * @param actions the list to fill
+     */
+    public void label(Board board, ActionList actions){
+        int size = board.getSize();
+        ensureCapacity(size);
+        actions.reset(size);
+        nextStamp();
+        int[] cells = actions.getCells();
+        int numCells = 0;
+        //Scan row by row (top to bottom), so components are found in the same order as before,
+        //from the top of the highest column and skipping the empty cells above each column
+        for(int row = size - board.getMaxHeight(); row < size; row++){
+            int height = size - 1 - row;
+            for(int col = 0; col < size; col++){
+                if(height >= board.getHeight(col)){
+                    continue;
+                }
+                int cell = board.cellIndex(row, col);
+                int fruitType = board.getCell(cell);
+                if(visitedStamps[cell] != stamp && fruitType != Board.EMPTY_CELL){
+                    int componentSize = fill(board, cell, fruitType, cells, numCells);
+                    actions.addComponent(cells, numCells, componentSize, fruitType, fillAnchor, fillMirrorAnchor, fillColumnMask);
+                    numCells += componentSize;
+                }
+            }
+        }
+        sortBySize(actions, size * size);
+    }
+
+    /**
+     * relabel fills the actions list of a child state from the actions list of its parent.
+     * Only the columns touched by the move and their neighbours can hold changed components:
+     * parent components clear of those columns are reused, and the rest of the board is
+     * labelled again starting from the cells of those columns. The result is the same list,
+     * in the same order, as label would produce
+     * @param board the board after the move
+     * @param parent the actions list of the board before the move
+     * @param touchedColumns the bit mask of the columns touched by the move
+     * @param actions the list to fill
+     */
+    public void relabel(Board board, ActionList parent, int touchedColumns, ActionList actions){
+        int size = board.getSize();
+        int dirtyColumns = (touchedColumns | (touchedColumns << 1) | (touchedColumns >>> 1)) & ((1 << size) - 1);
+        //When most of the board changed, labelling it all again is cheaper
+        if(2 * Integer.bitCount(dirtyColumns) >= size){
+            label(board, actions);
+            return;
+        }
+        ensureCapacity(size);
+        actions.reset(size);
+        nextStamp();
+        int[] cells = actions.getCells();
+        int numCells = 0;
+        //Reuse the unchanged components (their cells stay in the parent's storage), keeping the parent's (sorted) order
+        for(int i = 0; i < parent.size(); i++){
+            if((parent.getColumnMask(i) & dirtyColumns) == 0){
+                actions.addComponent(parent.getCells(i), parent.getStart(i), parent.getComponentSize(i), parent.getFruitType(i), parent.getAnchor(i), parent.getMirrorAnchor(i), parent.getColumnMask(i));
+            }
+        }
+        int numKept = actions.size();
+        //Label the components with a cell in a dirty column (they may extend past it)
+        for(int col = 0; col < size; col++){
+            if((dirtyColumns & (1 << col)) != 0){
+                for(int cell = col * size; cell < col * size + board.getHeight(col); cell++){
+                    int fruitType = board.getCell(cell);
+                    if(visitedStamps[cell] != stamp && fruitType != Board.EMPTY_CELL){
+                        int componentSize = fill(board, cell, fruitType, cells, numCells);
+                        actions.addComponent(cells, numCells, componentSize, fruitType, fillAnchor, fillMirrorAnchor, fillColumnMask);
+                        numCells += componentSize;
+                    }
+                }
+            }
+        }
+        mergeNewComponents(actions, numKept);
+    }
+
+    //Depth-first fill from a seed cell, writing the cells in post-order; returns the component size
+    private int fill(Board board, int seed, int fruitType, int[] cells, int offset){
+        int size = board.getSize();
+        int written = 0;
+        int top = 0;
+        fillAnchor = Integer.MAX_VALUE;
+        fillMirrorAnchor = Integer.MAX_VALUE;
+        fillColumnMask = 0;
+        stack[top] = seed;
+        directions[top++] = 0;
+        visitedStamps[seed] = stamp;
+        while(top > 0){
+            int cell = stack[top - 1];
+            int direction = directions[top - 1];
+            //All neighbours done: the cell joins the component
+            if(direction == NUM_DIRECTIONS){
+                top--;
+                cells[offset + written++] = cell;
+                int col = cell / size;
+                //Row-major index of the cell: row (size - 1 - height) times size, plus col
+                int rowStart = (size - 1 - (cell - col * size)) * size;
+                fillAnchor = Math.min(fillAnchor, rowStart + col);
+                fillMirrorAnchor = Math.min(fillMirrorAnchor, rowStart + size - 1 - col);
+                fillColumnMask |= 1 << col;
+                continue;
+            }
+            directions[top - 1]++;
+            int next;
+            switch(direction){
+                //Next row (one cell down)
+                case 0: next = (cell % size > 0) ? cell - 1 : -1; break;
+                //Prior row (one cell up)
+                case 1: next = (cell % size < size - 1) ? cell + 1 : -1; break;
+                //Next column
+                case 2: next = (cell + size < size * size) ? cell + size : -1; break;
+                //Prior column
+                default: next = (cell - size >= 0) ? cell - size : -1; break;
+            }
+            if(next >= 0 && visitedStamps[next] != stamp && board.getCell(next) == fruitType){
+                visitedStamps[next] = stamp;
+                stack[top] = next;
+                directions[top++] = 0;
+            }
+        }
+        return written;
+    }
+
+    //Stable counting sort of the components by decreasing size
+    private void sortBySize(ActionList actions, int maxSize){
+        int count = actions.size();
+        Arrays.fill(sizeCounts, 0, maxSize + 2, 0);
+        for(int i = 0; i < count; i++){
+            sizeCounts[maxSize - actions.getFoundSize(i) + 1]++;
+        }
+        for(int i = 1; i <= maxSize + 1; i++){
+            sizeCounts[i] += sizeCounts[i - 1];
+        }
+        int[] order = actions.getOrder();
+        for(int i = 0; i < count; i++){
+            order[sizeCounts[maxSize - actions.getFoundSize(i)]++] = i;
+        }
+        //Alternating sum of the scores in sorted order
+        int alternatingScore = 0;
+        for(int k = 0; k < count; k++){
+            int componentSize = actions.getFoundSize(order[k]);
+            alternatingScore += ((k & 1) == 0) ? componentSize * componentSize : -componentSize * componentSize;
+        }
+        actions.setAlternatingScore(alternatingScore);
+    }
+
+    //Orders the newly labelled components (found after the numKept reused ones, which are
+    //already sorted) by decreasing size then anchor, and merges them with the reused ones
+    private void mergeNewComponents(ActionList actions, int numKept){
+        int numNew = actions.size() - numKept;
+        //Sort keys packed in an int: (inverted) size, then anchor, then the index among the new components
+        for(int i = 0; i < numNew; i++){
+            newComponents[i] = (sortKey(actions, numKept + i) << SORT_KEY_BITS) | i;
+        }
+        Arrays.sort(newComponents, 0, numNew);
+        int[] order = actions.getOrder();
+        int kept = 0;
+        int added = 0;
+        //The alternating sum of the scores is added up as the sorted order is merged
+        int alternatingScore = 0;
+        for(int k = 0; k < numKept + numNew; k++){
+            if(added == numNew || (kept < numKept && sortKey(actions, kept) < (newComponents[added] >>> SORT_KEY_BITS))){
+                order[k] = kept++;
+            }
+            else{
+                order[k] = numKept + (newComponents[added++] & SORT_KEY_MASK);
+            }
+            int componentSize = actions.getFoundSize(order[k]);
+            alternatingScore += ((k & 1) == 0) ? componentSize * componentSize : -componentSize * componentSize;
+        }
+        actions.setAlternatingScore(alternatingScore);
+    }
+
+    //Key ordering components (by found index) larger first, then by lower anchor
+    private static int sortKey(ActionList actions, int foundIndex){
+        return ((SORT_KEY_MASK - actions.getFoundSize(foundIndex)) << SORT_KEY_BITS) | actions.getFoundAnchor(foundIndex);
+    }
+
+    //Advances the visited generation, clearing the stamps when the counter wraps around
+    private void nextStamp(){
+        stamp++;
+        if(stamp == Integer.MAX_VALUE){
+            Arrays.fill(visitedStamps, 0);
+            stamp = 1;
+        }
+    }
+
+    //Grows the buffers for the given board size
+    private void ensureCapacity(int size){
+        int numCells = size * size;
+        if(stack.length < numCells){
+            stack = new int[numCells];
+            directions = new byte[numCells];
+            visitedStamps = new int[numCells];
+            sizeCounts = new int[numCells + 2];
+            newComponents = new int[numCells];
+            stamp = 0;
+        }
+    }
+}
+
+/*******************************************************************************
+ * The Board class stores the fruits of a square board in one packed byte array,
+ * one byte per cell. The layout is column-major and bottom-up (cell index
+ * col * size + height, height 0 being the bottom row), so the cells of a column
+ * are contiguous and gravity is a compaction of that slice of the array.
+ * The height of each column (one above its top fruit) is kept along, so that
+ * gravity, labelling and printing skip the empty cells above the fruits.
+ * The board also keeps the Zobrist key of its cells, and supports making a move
+ * in place and unmaking it later from an undo log of the touched columns.
+ *******************************************************************************/
+class Board{
+    public static final int EMPTY_CELL = -1;
+    private static final byte REMOVED_CELL = -10;
+    private static final int INITIAL_UNDO_MOVES = 16;
+    private final int size;
+    private final byte[] cells;
+    //Height of each column: one above its top fruit, every cell from there up is empty
+    private final int[] heights;
+    private long hashKey;
+    //Key of the board reflected left to right, kept up to date with hashKey
+    private long mirrorKey;
+    //Undo log: saved column slices, their column index and height, and per move the first saved column and keys
+    private byte[] undoCells;
+    private int[] undoColumns;
+    private int[] undoHeights;
+    private int[] undoMoveStart;
+    private long[] undoHashKeys;
+    private long[] undoMirrorKeys;
+    private int undoColumnCount;
+    private int undoMoveCount;
+
+    /**
+     * Board constructor, creates an empty board
+     * @param size the width and height of the board
+     */
+    public Board(int size){
+        this.size = size;
+        this.cells = new byte[size * size];
+        this.heights = new int[size];
+        //Every key holds the key of the size, as the cells are numbered relative to it
+        this.hashKey = ZobristHash.sizeKey(size);
+        this.mirrorKey = ZobristHash.sizeKey(size);
+        Arrays.fill(cells, (byte) EMPTY_CELL);
+    }
+
+    //Copy constructor (the undo log is not copied)
+    private Board(Board other){
+        this.size = other.size;
+        this.cells = other.cells.clone();
+        this.heights = other.heights.clone();
+        this.hashKey = other.hashKey;
+        this.mirrorKey = other.mirrorKey;
+    }
+
+    /**
+     * copy returns an independent copy of the board
+     * @return the copy of the board
+     */
+    public Board copy(){
+        return new Board(this);
+    }
+
+    /**
+     * getSize returns the width and height of the board
+     * @return the size of the board
+     */
+    public int getSize(){
+        return size;
+    }
+
+    /**
+     * getHashKey returns the Zobrist key of the cells of the board
+     * @return the Zobrist key of the board
+     */
+    public long getHashKey(){
+        return hashKey;
+    }
+
+    /**
+     * getMirrorKey returns the Zobrist key of the board reflected left to right
+     * @return the Zobrist key of the mirrored board
+     */
+    public long getMirrorKey(){
+        return mirrorKey;
+    }
+
+    /**
+     * getCanonicalKey returns the key shared by the board and its mirror image (the
+     * smaller of the two keys), so both orientations are looked up as one position
+     * @return the canonical Zobrist key of the board
+     */
+    public long getCanonicalKey(){
+        return Math.min(hashKey, mirrorKey);
+    }
+
+    /**
+     * isMirrored returns true if the canonical key is the key of the mirror image: moves
+     * stored under the canonical key are then reflected on this board
+     * @return true if the canonical orientation is the mirror image of the board
+     */
+    public boolean isMirrored(){
+        return mirrorKey < hashKey;
+    }
+
+    /**
+     * mirrorCell returns the cell at the same height in the opposite column
+     * @param cell the index of the cell
+     * @return the index of the reflected cell
+     */
+    public int mirrorCell(int cell){
+        int col = cell / size;
+        return cell + (size - 1 - 2 * col) * size;
+    }
+
+    /**
+     * cellIndex returns the index in the packed array of a (row, col) position
+     * @param row the row (0 is the top row)
+     * @param col the column
+     * @return the index of the cell
+     */
+    public int cellIndex(int row, int col){
+        return col * size + (size - 1 - row);
+    }
+
+    /**
+     * rowOf returns the row (0 is the top row) of a cell index
+     * @param cell the index of the cell
+     * @return the row of the cell
+     */
+    public int rowOf(int cell){
+        return size - 1 - (cell % size);
+    }
+
+    /**
+     * colOf returns the column of a cell index
+     * @param cell the index of the cell
+     * @return the column of the cell
+     */
+    public int colOf(int cell){
+        return cell / size;
+    }
+
+    /**
+     * getHeight returns the height of a column: every cell from there up is empty
+     * @param col the column
+     * @return one above the top fruit of the column (0 for an empty column)
+     */
+    public int getHeight(int col){
+        return heights[col];
+    }
+
+    /**
+     * getMaxHeight returns the height of the highest column
+     * @return the largest column height (0 for an empty board)
+     */
+    public int getMaxHeight(){
+        int maxHeight = 0;
+        for(int col = 0; col < size; col++){
+            maxHeight = Math.max(maxHeight, heights[col]);
+        }
+        return maxHeight;
+    }
+
+    /**
+     * countFruits returns the number of fruits on the board
+     * @return the number of non empty cells
+     */
+    public int countFruits(){
+        int fruits = 0;
+        for(int col = 0; col < size; col++){
+            for(int cell = col * size; cell < col * size + heights[col]; cell++){
+                if(cells[cell] != EMPTY_CELL){
+                    fruits++;
+                }
+            }
+        }
+        return fruits;
+    }
+
+    /**
+     * get returns the fruit type at a (row, col) position
+     * @param row the row (0 is the top row)
+     * @param col the column
+     * @return the fruit type, or EMPTY_CELL
+     */
+    public int get(int row, int col){
+        return cells[cellIndex(row, col)];
+    }
+
+    /**
+     * getCell returns the fruit type at a cell index
+     * @param cell the index of the cell
+     * @return the fruit type, or EMPTY_CELL
+     */
+    public int getCell(int cell){
+        return cells[cell];
+    }
+
+    /**
+     * set places a fruit (or EMPTY_CELL) at a (row, col) position
+     * @param row the row (0 is the top row)
+     * @param col the column
+     * @param fruitType the fruit type, or EMPTY_CELL
+     */
+    public void set(int row, int col, int fruitType){
+        int cell = cellIndex(row, col);
+        hashKey ^= ZobristHash.cellKey(cell, cells[cell]) ^ ZobristHash.cellKey(cell, fruitType);
+        int mirror = mirrorCell(cell);
+        mirrorKey ^= ZobristHash.cellKey(mirror, cells[cell]) ^ ZobristHash.cellKey(mirror, fruitType);
+        cells[cell] = (byte) fruitType;
+        //Keep the height above the top fruit (the input boards may leave holes under it)
+        int height = cell - col * size;
+        if(fruitType != EMPTY_CELL){
+            heights[col] = Math.max(heights[col], height + 1);
+        }
+        else if(height + 1 == heights[col]){
+            while(heights[col] > 0 && cells[col * size + heights[col] - 1] == EMPTY_CELL){
+                heights[col]--;
+            }
+        }
+    }
+
+    /**
+     * removeComponent removes the cells of a connected component and applies gravity
+     * to every column that lost a cell (the move cannot be unmade)
+     * @param componentCells the array holding the cell indices of the component
+     * @param start the offset of the first cell of the component
+     * @param count the number of cells of the component
+     * @return a bit mask of the columns touched by the removal
+     */
+    public int removeComponent(int[] componentCells, int start, int count){
+        int touchedColumns = markComponent(componentCells, start, count);
+        for(int col = 0; col < size; col++){
+            if((touchedColumns & (1 << col)) != 0){
+                collapseColumn(col);
+            }
+        }
+        return touchedColumns;
+    }
+
+    /**
+     * makeMove removes the cells of a connected component and applies gravity in place,
+     * saving the touched columns so that unmakeMove can restore them
+     * @param componentCells the array holding the cell indices of the component
+     * @param start the offset of the first cell of the component
+     * @param count the number of cells of the component
+     * @return a bit mask of the columns touched by the removal
+     */
+    public int makeMove(int[] componentCells, int start, int count){
+        ensureUndoCapacity();
+        undoHashKeys[undoMoveCount] = hashKey;
+        undoMirrorKeys[undoMoveCount] = mirrorKey;
+        undoMoveStart[undoMoveCount] = undoColumnCount;
+        undoMoveCount++;
+        int touchedColumns = 0;
+        for(int i = start; i < start + count; i++){
+            touchedColumns |= 1 << (componentCells[i] / size);
+        }
+        //Save the fruits of the touched columns as they are before the removal
+        for(int col = 0; col < size; col++){
+            if((touchedColumns & (1 << col)) != 0){
+                System.arraycopy(cells, col * size, undoCells, undoColumnCount * size, heights[col]);
+                undoHeights[undoColumnCount] = heights[col];
+                undoColumns[undoColumnCount++] = col;
+            }
+        }
+        markComponent(componentCells, start, count);
+        for(int col = 0; col < size; col++){
+            if((touchedColumns & (1 << col)) != 0){
+                collapseColumn(col);
+            }
+        }
+        return touchedColumns;
+    }
+
+    /**
+     * unmakeMove restores the board as it was before the last makeMove
+     */
+    public void unmakeMove(){
+        undoMoveCount--;
+        int firstColumn = undoMoveStart[undoMoveCount];
+        //The cells above the saved heights were and still are empty
+        for(int i = firstColumn; i < undoColumnCount; i++){
+            System.arraycopy(undoCells, i * size, cells, undoColumns[i] * size, undoHeights[i]);
+            heights[undoColumns[i]] = undoHeights[i];
+        }
+        undoColumnCount = firstColumn;
+        hashKey = undoHashKeys[undoMoveCount];
+        mirrorKey = undoMirrorKeys[undoMoveCount];
+    }
+
+    /**
+     * rowToString returns a row of the board in the output format ('*' for empty cells)
+     * @param row the row (0 is the top row)
+     * @return the row as a string
+     */
+    public String rowToString(int row){
+        StringBuilder rowString = new StringBuilder(size);
+        int height = size - 1 - row;
+        for(int col = 0; col < size; col++){
+            int fruitType = (height < heights[col]) ? get(row, col) : EMPTY_CELL;
+            if(fruitType == EMPTY_CELL){
+                rowString.append('*');
+            }
+            else{
+                rowString.append(fruitType);
+            }
+        }
+        return rowString.toString();
+    }
+
+    //Marks the cells of a component as removed (taking their keys out) and returns the bit mask of their columns
+    private int markComponent(int[] componentCells, int start, int count){
+        int touchedColumns = 0;
+        for(int i = start; i < start + count; i++){
+            int cell = componentCells[i];
+            hashKey ^= ZobristHash.cellKey(cell, cells[cell]);
+            mirrorKey ^= ZobristHash.cellKey(mirrorCell(cell), cells[cell]);
+            cells[cell] = REMOVED_CELL;
+            touchedColumns |= 1 << (cell / size);
+        }
+        return touchedColumns;
+    }
+
+    //Compacts a column towards the bottom in one pass, keeping the order of the fruits and
+    //updating the keys; only the cells below the height of the column can hold fruits
+    private void collapseColumn(int col){
+        int base = col * size;
+        int mirrorBase = (size - 1 - col) * size;
+        int height = heights[col];
+        int write = 0;
+        for(int read = 0; read < height; read++){
+            int fruitType = cells[base + read];
+            if(fruitType == REMOVED_CELL){
+                continue;
+            }
+            //A fruit falling from read down to write moves its key with it
+            if(write != read){
+                hashKey ^= ZobristHash.cellKey(base + read, fruitType) ^ ZobristHash.cellKey(base + write, fruitType);
+                mirrorKey ^= ZobristHash.cellKey(mirrorBase + read, fruitType) ^ ZobristHash.cellKey(mirrorBase + write, fruitType);
+                cells[base + write] = (byte) fruitType;
+            }
+            write++;
+        }
+        Arrays.fill(cells, base + write, base + height, (byte) EMPTY_CELL);
+        heights[col] = write;
+    }
+
+    //Grows the undo log so it can hold one more move touching every column
+    private void ensureUndoCapacity(){
+        if(undoMoveStart == null){
+            undoMoveStart = new int[INITIAL_UNDO_MOVES];
+            undoHashKeys = new long[INITIAL_UNDO_MOVES];
+            undoMirrorKeys = new long[INITIAL_UNDO_MOVES];
+            undoColumns = new int[INITIAL_UNDO_MOVES * size];
+            undoHeights = new int[INITIAL_UNDO_MOVES * size];
+            undoCells = new byte[INITIAL_UNDO_MOVES * size * size];
+        }
+        if(undoMoveCount == undoMoveStart.length){
+            undoMoveStart = Arrays.copyOf(undoMoveStart, undoMoveCount * 2);
+            undoHashKeys = Arrays.copyOf(undoHashKeys, undoMoveCount * 2);
+            undoMirrorKeys = Arrays.copyOf(undoMirrorKeys, undoMoveCount * 2);
+        }
+        if(undoColumnCount + size > undoColumns.length){
+            undoColumns = Arrays.copyOf(undoColumns, undoColumns.length * 2);
+            undoHeights = Arrays.copyOf(undoHeights, undoHeights.length * 2);
+            undoCells = Arrays.copyOf(undoCells, undoCells.length * 2);
+        }
+    }
+}
+
+/******************************************************************************
+ * The ZobristHash class holds the random keys used to hash a board state and
+ * the player to move. Keys are XOR-ed in and out, so a child's key can be
+ * updated from its parent's key using only the cells that changed. A board
+ * and its left-right mirror image score the same, so states are hashed by the
+ * smaller of the two keys and share their entries in the caches. Cells are
+ * numbered relative to the board size, so every key also holds a key of the
+ * size: the same cell index on boards of two sizes is two different cells.
+ ******************************************************************************/
+class ZobristHash{
+    private static final int MAX_BOARD_SIZE = 26;
+    private static final int MAX_FRUIT_TYPES = 10;
+    private static final int EMPTY_CELL = -1;
+    private static final long SEED = 0x5F3759DFL;
+    private static final long[][] CELL_KEYS = new long[MAX_BOARD_SIZE * MAX_BOARD_SIZE][MAX_FRUIT_TYPES];
+    private static final long MIN_TO_MOVE_KEY;
+    private static final long[] SIZE_KEYS = new long[MAX_BOARD_SIZE + 1];
+
+    static{
+        //Fixed seed so keys (and therefore searches) are reproducible between runs
+        Random random = new Random(SEED);
+        for(int i = 0; i < CELL_KEYS.length; i++){
+            for(int j = 0; j < MAX_FRUIT_TYPES; j++){
+                CELL_KEYS[i][j] = random.nextLong();
+            }
+        }
+        MIN_TO_MOVE_KEY = random.nextLong();
+        for(int i = 0; i < SIZE_KEYS.length; i++){
+            SIZE_KEYS[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * cellKey returns the key of a fruit at a given board cell (0 for an empty cell)
+     * @param cell the index of the cell (see Board.cellIndex)
+     * @param fruitType the fruit type, or EMPTY_CELL
+     * @return the key of the fruit at the given cell
+     */
+    public static long cellKey(int cell, int fruitType){
+        if(fruitType == EMPTY_CELL){
+            return 0L;
+        }
+        return CELL_KEYS[cell][fruitType];
+    }
+
+    /**
+     * sizeKey returns the key of the board size, the key of an empty board of that size
+     * @param size the width and height of the board
+     * @return the key of the board size
+     */
+    public static long sizeKey(int size){
+        return SIZE_KEYS[size];
+    }
+
+    /**
+     * sideKey returns the key XOR-ed in when "MIN" is the player to move
+     * @return the side to move key
+     */
+    public static long sideKey(){
+        return MIN_TO_MOVE_KEY;
+    }
+
+    /**
+     * hashState returns the canonical key of a state and player to move
+     * @param state the board state configuration
+     * @param player the player to move ("MAX" or "MIN")
+     * @return the Zobrist key of the state (or of its mirror image) and player to move
+     */
+    public static long hashState(Board state, String player){
+        //The board keeps the keys of its cells (and of their mirror image) up to date as it
+        //changes; both orientations of a position share the smaller one
+        long key = state.getCanonicalKey();
+        return player.contentEquals("MIN") ? key ^ MIN_TO_MOVE_KEY : key;
+    }
+}
+
+/*******************************************************************************
+ * The TranspositionTable class is a fixed-size cache of search results keyed by
+ * Zobrist key. Entries are grouped in buckets of two: the first slot keeps the
+ * deepest result (unless it is from an older search), the second slot is always
+ * replaced. Values are stored relative to the node's running score difference,
+ * so the same board reached through different move orders shares one entry.
+ * The table is shared by all search threads without locks: each entry is packed
+ * in one long, and the key is stored XOR-ed with it, so an entry torn by two
+ * threads writing at once no longer matches its key and is simply ignored.
+ * The slots live in one buffer of longs (key then entry, two slots to a bucket),
+ * either on the heap or mapped from a cache file: the file outlives the process,
+ * so the next move starts from the results of the earlier ones (the keys, which
+ * include the board size, and the values relative to the side to move do not
+ * depend on the game being played).
+ * A file is mapped once per process, and its table shared by all the engines.
+ *******************************************************************************/
+class TranspositionTable{
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    public static final int NO_MOVE = -1;
+    public static final long MISS = 0L;
+    //Entry layout: value (32 bits), best move + 1 (16), draft (8), flag (2), age (5), valid bit
+    private static final int MOVE_SHIFT = 32;
+    private static final int DRAFT_SHIFT = 48;
+    private static final int FLAG_SHIFT = 56;
+    private static final int AGE_SHIFT = 58;
+    private static final long VALID_BIT = 1L << 63;
+    private static final int AGE_MASK = 0x1F;
+    //Cache file header (one cache line before the slots): magic number, layout version, size
+    //and current age. A file with another header is emptied, changing the evaluation or
+    //the entry layout must change the version
+    private static final long CACHE_MAGIC = 0x4652554954545431L;
+    private static final long CACHE_VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SIZE_BITS_OFFSET = 16;
+    private static final int AGE_OFFSET = 24;
+    //Tables mapped from cache files by this process, by file: each file is mapped once and shared
+    private static final Map<Path, TranspositionTable> MAPPED_TABLES = new HashMap<>();
+    //Key and entry of each slot, interleaved
+    private final LongBuffer slots;
+    //Header of the cache file, null for a table on the heap
+    private final MappedByteBuffer header;
+    private final int bucketMask;
+    private volatile int currentAge;
+    //Searches running on the table
+    private int activeSearches;
+    //True if each search only finds its own entries (set before the searches that read it), and
+    //the number of ages started since the table was last cleared
+    private boolean isolated;
+    private int agesSinceClear;
+
+    /**
+     * TranspositionTable constructor, allocates 2^sizeBits entries on the heap
+     * @param sizeBits the base 2 logarithm of the number of entries
+     */
+    public TranspositionTable(int sizeBits){
+        this(LongBuffer.wrap(new long[2 << sizeBits]), null, sizeBits, 0);
+    }
+
+    //Table on a buffer of 2^sizeBits slots
+    private TranspositionTable(LongBuffer slots, MappedByteBuffer header, int sizeBits, int age){
+        this.slots = slots;
+        this.header = header;
+        this.bucketMask = (1 << (sizeBits - 1)) - 1;
+        this.currentAge = age;
+    }
+
+    /**
+     * open maps a table of 2^sizeBits entries from a cache file, keeping the entries of
+     * the earlier searches saved in it. The file is created (or emptied, if it was saved
+     * with another layout or size) as needed; the pages are only read when first touched.
+     * A file already opened by this process gives the same table (with its size)
+     * @param fileName the name of the cache file
+     * @param sizeBits the base 2 logarithm of the number of entries
+     * @return the table mapped from the file, or a table on the heap if the file cannot be mapped
+     */
+    public static synchronized TranspositionTable open(String fileName, int sizeBits){
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        TranspositionTable table = MAPPED_TABLES.get(path);
+        if(table == null){
+            table = map(path, sizeBits);
+            MAPPED_TABLES.put(path, table);
+        }
+        return table;
+    }
+
+    //Maps a table from a cache file, or allocates it on the heap if the file cannot be mapped
+    private static TranspositionTable map(Path path, int sizeBits){
+        long slotBytes = (2L << sizeBits) * Long.BYTES;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer saved = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+            channel.read(saved, 0);
+            boolean valid = channel.size() == HEADER_BYTES + slotBytes
+                    && saved.getLong(MAGIC_OFFSET) == CACHE_MAGIC
+                    && saved.getLong(VERSION_OFFSET) == CACHE_VERSION
+                    && saved.getLong(SIZE_BITS_OFFSET) == sizeBits;
+            //Truncating drops the old slots: mapping the file grows it back filled with zeros (empty slots)
+            if(!valid){
+                channel.truncate(0);
+            }
+            //The mappings stay valid once the channel is closed
+            LongBuffer slots = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, slotBytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            if(!valid){
+                header.putLong(MAGIC_OFFSET, CACHE_MAGIC);
+                header.putLong(VERSION_OFFSET, CACHE_VERSION);
+                header.putLong(SIZE_BITS_OFFSET, sizeBits);
+                header.putLong(AGE_OFFSET, 0);
+            }
+            int age = (int) header.getLong(AGE_OFFSET) & AGE_MASK;
+            return new TranspositionTable(slots, header, sizeBits, age);
+        }
+        catch(IOException | UnsupportedOperationException ex){
+            Logger.getLogger(TranspositionTable.class.getName()).log(Level.WARNING, null, ex);
+            return new TranspositionTable(sizeBits);
+        }
+    }
+
+    /**
+     * startSearch marks all existing entries as belonging to an older search (they become
+     * the first candidates for replacement). Engines sharing the table (the connections of
+     * a daemon) search under one age: it only advances when no other search is running,
+     * so that they do not age out each other's entries
+     */
+    public synchronized void startSearch(){
+        if(activeSearches++ > 0){
+            return;
+        }
+        currentAge = (currentAge + 1) & AGE_MASK;
+        //The ages wrap around: an isolated search must not find the entries of the last search
+        //of the same age, so the table is cleared once every AGE_MASK + 1 searches
+        if(isolated && ++agesSinceClear > AGE_MASK){
+            clear();
+            agesSinceClear = 0;
+        }
+        //The next process goes on from this age, so the entries saved now count as older
+        if(header != null){
+            header.putLong(AGE_OFFSET, currentAge);
+        }
+    }
+
+    /**
+     * isolateSearches makes each later search find only its own entries, as if it started
+     * from an empty table: the entries of the earlier searches (of another age) are taken
+     * for misses, which saves clearing every slot before each search
+     */
+    public synchronized void isolateSearches(){
+        if(!isolated){
+            isolated = true;
+            //The entries stored until now may have any age
+            clear();
+            agesSinceClear = 0;
+        }
+    }
+
+    /**
+     * endSearch marks the end of a search started by startSearch
+     */
+    public synchronized void endSearch(){
+        activeSearches--;
+    }
+
+    /**
+     * clear removes all entries (for measurements that must not reuse an earlier search)
+     */
+    public void clear(){
+        if(slots.hasArray()){
+            Arrays.fill(slots.array(), 0L);
+            return;
+        }
+        for(int i = 0; i < slots.capacity(); i++){
+            slots.put(i, 0L);
+        }
+    }
+
+    /**
+     * probe looks up a key in the table
+     * @param key the Zobrist key
+     * @return the packed entry stored for the key, or MISS
+     */
+    public long probe(long key){
+        int slot = bucketOf(key);
+        long entry = entryAt(slot);
+        if(entry != MISS && (keyAt(slot) ^ entry) == key && isVisible(entry)){
+            return entry;
+        }
+        entry = entryAt(slot + 1);
+        if(entry != MISS && (keyAt(slot + 1) ^ entry) == key && isVisible(entry)){
+            return entry;
+        }
+        return MISS;
+    }
+
+    /**
+     * store saves a search result, following the bucket replacement policy
+     * @param key the Zobrist key
+     * @param draft the remaining depth the value was searched to
+     * @param flag EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param value the (relative) value of the node
+     * @param bestMove the canonical anchor of the best action, or NO_MOVE
+     */
+    public void store(long key, int draft, int flag, int value, int bestMove){
+        int slot = bucketOf(key);
+        long stored = entryAt(slot);
+        boolean sameKey = stored != MISS && (keyAt(slot) ^ stored) == key && isVisible(stored);
+        //Depth-preferred slot: replace if empty, same position, stale or shallower
+        if(stored == MISS || sameKey || ageOf(stored) != currentAge || draft >= draftOf(stored)){
+            //Keep the known best move if the new result did not produce one
+            if(bestMove == NO_MOVE && sameKey){
+                bestMove = bestMoveOf(stored);
+            }
+        }
+        //Otherwise fall back to the always-replace slot
+        else{
+            slot++;
+        }
+        long entry = VALID_BIT
+                | ((long) currentAge << AGE_SHIFT)
+                | ((long) flag << FLAG_SHIFT)
+                | ((long) Math.min(draft, 0xFF) << DRAFT_SHIFT)
+                | ((long) (bestMove + 1) << MOVE_SHIFT)
+                | ((long) value & 0xFFFFFFFFL);
+        slots.put(2 * slot + 1, entry);
+        slots.put(2 * slot, key ^ entry);
+    }
+
+    /**
+     * draftOf returns the remaining depth searched for an entry
+     * @param entry the entry returned by probe
+     * @return the draft of the entry
+     */
+    public static int draftOf(long entry){
+        return (int) (entry >>> DRAFT_SHIFT) & 0xFF;
+    }
+
+    /**
+     * flagOf returns the bound type of an entry
+     * @param entry the entry returned by probe
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int flagOf(long entry){
+        return (int) (entry >>> FLAG_SHIFT) & 0x3;
+    }
+
+    /**
+     * valueOf returns the (relative) value of an entry
+     * @param entry the entry returned by probe
+     * @return the stored value
+     */
+    public static int valueOf(long entry){
+        return (int) entry;
+    }
+
+    /**
+     * bestMoveOf returns the best action of an entry, as its anchor in the canonical
+     * orientation (the mirrored anchor on a board hashed by its mirror image)
+     * @param entry the entry returned by probe
+     * @return the canonical anchor of the best action, or NO_MOVE
+     */
+    public static int bestMoveOf(long entry){
+        return ((int) (entry >>> MOVE_SHIFT) & 0xFFFF) - 1;
+    }
+
+    //Age of the search an entry was stored in
+    private static int ageOf(long entry){
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    //True if an entry may be used by the current search (any entry, unless searches are isolated)
+    private boolean isVisible(long entry){
+        return !isolated || ageOf(entry) == currentAge;
+    }
+
+    //Stored key (XOR-ed with the entry) of a slot
+    private long keyAt(int slot){
+        return slots.get(2 * slot);
+    }
+
+    //Entry of a slot
+    private long entryAt(int slot){
+        return slots.get(2 * slot + 1);
+    }
+
+    //Index of the first slot of the bucket for the given key
+    private int bucketOf(long key){
+        return ((int) (key ^ (key >>> 32)) & bucketMask) << 1;
+    }
+}
+
+/*******************************************************************************
+ * The Deadline class is the time limit of a search. Searches check it every few
+ * hundred nodes (System.nanoTime is too slow to call on every node); once one
+ * thread sees the time is up, the volatile expired flag tells all the others
+ * without them reading the clock.
+ *******************************************************************************/
+class Deadline{
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final double NANOS_PER_MS = 1e6;
+    private final long deadlineNanos;
+    private volatile boolean expired;
+
+    /**
+     * Deadline constructor
+     * @param deadlineNanos the System.nanoTime at which time is up (NO_DEADLINE for none)
+     */
+    private Deadline(long deadlineNanos){
+        this.deadlineNanos = deadlineNanos;
+        this.expired = false;
+    }
+
+    /**
+     * afterMillis returns a deadline a number of milliseconds after a start time
+     * @param startNanos the System.nanoTime of the start
+     * @param millis the allowed time in milliseconds
+     * @return the new deadline
+     */
+    public static Deadline afterMillis(long startNanos, double millis){
+        return new Deadline(startNanos + (long)(millis * NANOS_PER_MS));
+    }
+
+    /**
+     * none returns a deadline that is never reached (searches to a fixed depth)
+     * @return the new deadline
+     */
+    public static Deadline none(){
+        return new Deadline(NO_DEADLINE);
+    }
+
+    /**
+     * reached reads the clock and tells if the time is up
+     * @return true if the time is up
+     */
+    public boolean reached(){
+        if(!expired && deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0){
+            expired = true;
+        }
+        return expired;
+    }
+
+    /**
+     * isExpired tells if a thread has already seen the time is up, without reading the clock
+     * @return true if the time is up
+     */
+    public boolean isExpired(){
+        return expired;
+    }
+
+    /**
+     * expire ends the time now (stopping the searches that use this deadline)
+     */
+    public void expire(){
+        expired = true;
+    }
+
+    /**
+     * remainingNanos returns the time left before the deadline
+     * @return the time left in nanoseconds (Long.MAX_VALUE without a deadline)
+     */
+    public long remainingNanos(){
+        if(deadlineNanos == NO_DEADLINE){
+            return Long.MAX_VALUE;
+        }
+        return deadlineNanos - System.nanoTime();
+    }
+}
+
+/*******************************************************************************
+ * The SearchAbortedException class unwinds a search that ran out of time or was
+ * told to stop. It replaces a sentinel score (which could be taken for a real
+ * one); a single instance without a stack trace is thrown, so aborting is cheap.
+ *******************************************************************************/
+class SearchAbortedException extends RuntimeException{
+    private static final long serialVersionUID = 1L;
+    public static final SearchAbortedException INSTANCE = new SearchAbortedException();
+
+    /**
+     * SearchAbortedException constructor, without message, cause or stack trace
+     */
+    private SearchAbortedException(){
+        super(null, null, false, false);
+    }
+}
+
+/*******************************************************************************
+ * The SearchStats class counts what a search does: generated nodes, evaluated
+ * leaves, cutoffs (and how many came from the first move searched),
+ * transposition table probes and hits, moves searched to a reduced depth (and
+ * how many had to be searched again in full), moves left out by the width cap,
+ * search time and allocated bytes. Each
+ * worker counts in its own instance, and main sums them up after every
+ * iteration into one record, written as a line of JSON.
+ *******************************************************************************/
+class SearchStats{
+    private long nodes;
+    private long leaves;
+    private long horizonLeaves;
+    private long betaCutoffs;
+    private long firstMoveCutoffs;
+    private long ttProbes;
+    private long ttHits;
+    private long ttCutoffs;
+    private long reductions;
+    private long researches;
+    private long prunedMoves;
+    private long searchNanos;
+    private long allocatedBytes;
+
+    /**
+     * countNode counts a visited node (a child searched again with another window counts again)
+     */
+    public void countNode(){
+        nodes++;
+    }
+
+    /**
+     * countLeaf counts an evaluated leaf
+     * @param horizon true for a leaf at the maximum depth, false for a terminal node (end of game)
+     */
+    public void countLeaf(boolean horizon){
+        leaves++;
+        if(horizon){
+            horizonLeaves++;
+        }
+    }
+
+    /**
+     * countCutoff counts a cutoff
+     * @param firstMove true if the cutoff came from the first move searched
+     */
+    public void countCutoff(boolean firstMove){
+        betaCutoffs++;
+        if(firstMove){
+            firstMoveCutoffs++;
+        }
+    }
+
+    /**
+     * countProbe counts a transposition table probe
+     * @param hit true if the table had an entry for the position
+     */
+    public void countProbe(boolean hit){
+        ttProbes++;
+        if(hit){
+            ttHits++;
+        }
+    }
+
+    /**
+     * countTableCutoff counts a node whose value came from the transposition table
+     */
+    public void countTableCutoff(){
+        ttCutoffs++;
+    }
+
+    /**
+     * countReduction counts a late move searched to a reduced depth
+     * @param researched true if it failed high and was searched again to the full depth
+     */
+    public void countReduction(boolean researched){
+        reductions++;
+        if(researched){
+            researches++;
+        }
+    }
+
+    /**
+     * countPruned counts moves left out of a node by the width cap
+     * @param moves the number of moves not searched
+     */
+    public void countPruned(int moves){
+        prunedMoves += moves;
+    }
+
+    /**
+     * countSearch adds the time and the allocation of one search
+     * @param nanos the time spent searching in nanoseconds
+     * @param bytes the bytes allocated by the search
+     */
+    public void countSearch(long nanos, long bytes){
+        searchNanos += nanos;
+        allocatedBytes += bytes;
+    }
+
+    /**
+     * reset sets all counts back to zero
+     */
+    public void reset(){
+        nodes = 0;
+        leaves = 0;
+        horizonLeaves = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        ttCutoffs = 0;
+        reductions = 0;
+        researches = 0;
+        prunedMoves = 0;
+        searchNanos = 0;
+        allocatedBytes = 0;
+    }
+
+    /**
+     * add adds the counts of other stats to these
+     * @param other the stats to add
+     */
+    public void add(SearchStats other){
+        nodes += other.nodes;
+        leaves += other.leaves;
+        horizonLeaves += other.horizonLeaves;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        ttProbes += other.ttProbes;
+        ttHits += other.ttHits;
+        ttCutoffs += other.ttCutoffs;
+        reductions += other.reductions;
+        researches += other.researches;
+        prunedMoves += other.prunedMoves;
+        searchNanos += other.searchNanos;
+        allocatedBytes += other.allocatedBytes;
+    }
+
+    /**
+     * getNodes returns the number of generated nodes
+     * @return the number of generated nodes
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    /**
+     * reachedGameEnd tells if every line searched ended in a terminal node: no leaf was
+     * cut by the maximum depth, no value came from the table (which may hide such a
+     * leaf) and no move was left out by the width cap, so searching deeper cannot
+     * change the result
+     * @return true if the search was exhaustive
+     */
+    public boolean reachedGameEnd(){
+        return horizonLeaves == 0 && ttCutoffs == 0 && prunedMoves == 0;
+    }
+
+    /**
+     * getSearchNanos returns the time spent searching
+     * @return the search time in nanoseconds
+     */
+    public long getSearchNanos(){
+        return searchNanos;
+    }
+
+    /**
+     * toJson formats the record of one iteration of the iterative deepening
+     * @param depth the maximum depth of the iteration
+     * @param completed false if the iteration ran out of time
+     * @param value the value of the root (ignored if not completed)
+     * @param bestMove the best move of the iteration so far, or null if there is none
+     * @param elapsedNanos the wall clock time of the iteration
+     * @param branchingFactor the effective branching factor (nodes over the nodes of the last iteration)
+     * @param threads the stats of each worker during the iteration
+     * @return the record as one line of JSON
+     */
+    public String toJson(int depth, boolean completed, double value, String bestMove, long elapsedNanos, double branchingFactor, SearchStats[] threads){
+        StringBuilder json = new StringBuilder();
+        json.append("{\"depth\":").append(depth);
+        json.append(",\"completed\":").append(completed);
+        json.append(",\"value\":").append(completed ? String.valueOf(value) : "null");
+        json.append(",\"bestMove\":").append((bestMove != null) ? "\"" + bestMove + "\"" : "null");
+        json.append(",\"nodes\":").append(nodes);
+        json.append(",\"leaves\":").append(leaves);
+        json.append(",\"horizonLeaves\":").append(horizonLeaves);
+        json.append(",\"betaCutoffs\":").append(betaCutoffs);
+        json.append(",\"firstMoveCutoffRate\":").append(String.format("%.4f", ratio(firstMoveCutoffs, betaCutoffs)));
+        json.append(",\"ebf\":").append(String.format("%.3f", branchingFactor));
+        json.append(",\"ttProbes\":").append(ttProbes);
+        json.append(",\"ttHitRate\":").append(String.format("%.4f", ratio(ttHits, ttProbes)));
+        json.append(",\"ttCutoffs\":").append(ttCutoffs);
+        json.append(",\"reductions\":").append(reductions);
+        json.append(",\"researchRate\":").append(String.format("%.4f", ratio(researches, reductions)));
+        json.append(",\"prunedMoves\":").append(prunedMoves);
+        json.append(",\"elapsedMs\":").append(String.format("%.3f", elapsedNanos / 1e6));
+        json.append(",\"nodesPerSec\":").append(Math.round(ratio(nodes, elapsedNanos) * 1e9));
+        json.append(",\"allocatedBytes\":").append(allocatedBytes);
+        json.append(",\"threads\":[");
+        for(int i = 0; i < threads.length; i++){
+            json.append(i == 0 ? "" : ",").append("{\"nodes\":").append(threads[i].nodes);
+            json.append(",\"nodesPerSec\":").append(Math.round(ratio(threads[i].nodes, threads[i].searchNanos) * 1e9)).append("}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    //Ratio that is zero when there is nothing to divide by
+    private static double ratio(long count, long total){
+        return (total == 0) ? 0 : (double)count / total;
+    }
+
+    /**
+     * allocatedBytes returns the number of bytes allocated so far by the current thread
+     * @return the allocated bytes, or -1 if the virtual machine cannot tell
+     */
+    public static long allocatedBytes(){
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if(threadBean instanceof com.sun.management.ThreadMXBean){
+            return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
+
+/*******************************************************************************
+ * The SearchWorker class runs the alpha-beta search for one thread. Each worker
+ * has its own search board, reusable nodes and labeller, its own best index and
+ * node count; workers only share the transposition table. Several workers
+ * searching the same root at once (each in a different root move order, some
+ * one ply deeper) fill the table for each other ("lazy SMP").
+ *******************************************************************************/
+class SearchWorker{
+    //Bound above any score difference (at most (26 * 26)^2 < 2^19), with room for windows around it
+    public static final int INFINITY = 1 << 30;
+    public static final int NEG_INFINITY = -INFINITY;
+    //Number of nodes between two readings of the clock
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+    //Scores are sums of squared component sizes, so a window of one point holds no score
+    private static final int NULL_WINDOW = 1;
+    //Move ordering scores: principal variation move and table move first, then the
+    //others by size (below 26 * 26 < 2^10), killer rank, and history score (below 2^19)
+    private static final int PV_SCORE = Integer.MAX_VALUE;
+    private static final int TT_SCORE = Integer.MAX_VALUE - 1;
+    private static final int SIZE_SCORE_SHIFT = 21;
+    private static final int KILLER_SCORE_SHIFT = 19;
+    private static final int MAX_HISTORY = 1 << KILLER_SCORE_SHIFT;
+    private static final int NO_MOVE_KEY = -1;
+    private static final int MAX_CELLS = 26 * 26;
+    //Bits of a move key holding the anchor cell (below 26 * 26 < 2^10), the size is above them
+    private static final int MOVE_ANCHOR_BITS = 10;
+    private static final int MOVE_ANCHOR_MASK = (1 << MOVE_ANCHOR_BITS) - 1;
+    //Bits of an order key holding the action index (below 26 * 26 < 2^16)
+    private static final int ORDER_INDEX_BITS = 16;
+    private static final long ORDER_INDEX_MASK = (1L << ORDER_INDEX_BITS) - 1;
+    //Late move reductions: only with at least this much depth left, and only for components
+    //of at most this size (the small ones sorted last, which are seldom the best move)
+    private static final int REDUCTION_MIN_DRAFT = 3;
+    private static final int REDUCTION_MAX_SIZE = 2;
+    private final int id;
+    private final TranspositionTable transpositionTable;
+    private final AtomicBoolean stopFlag;
+    private final ComponentLabeller labeller;
+    //Mutable board the search makes and unmakes moves on, and the reusable node of each depth
+    private Board searchBoard;
+    private Node[] searchPlies;
+    //Index of the best action at the root, and whether the current search has found one yet
+    private int bestIndex;
+    private boolean rootMoveFound;
+    //Time limit of the current search, and the nodes left before the clock is read again
+    private Deadline deadline;
+    private int deadlineCountdown;
+    //Search order of the actions of each depth, and the buffer its sort keys are built in
+    private int[][] plyOrder;
+    private long[] orderKeys;
+    //Principal variation (as move keys) being built at each depth, and the one of the last iteration
+    private int[][] pvTable;
+    private int[] pvLength;
+    private int[] previousPv;
+    private int previousPvLength;
+    private boolean followPv;
+    //Two killer moves (keys of moves that caused a cutoff) per depth, and the history score of each anchor cell
+    private int[][] killers;
+    private final int[] history;
+    //Selective search: moves searched in full before the later ones are reduced by a ply,
+    //and moves searched below the root before the rest are left out (0 for neither)
+    private int lateMoves;
+    private int widthCap;
+    //Counts of the searches of this worker
+    private final SearchStats stats;
+
+    /**
+     * SearchWorker constructor
+     * @param id the id of the worker (0 is the main worker, the others are helpers)
+     * @param transpositionTable the table shared by all workers
+     * @param stopFlag the flag telling the workers to abandon the current search
+     */
+    public SearchWorker(int id, TranspositionTable transpositionTable, AtomicBoolean stopFlag){
+        this.id = id;
+        this.transpositionTable = transpositionTable;
+        this.stopFlag = stopFlag;
+        this.labeller = new ComponentLabeller();
+        this.searchPlies = new Node[0];
+        this.bestIndex = 0;
+        this.plyOrder = new int[0][];
+        this.orderKeys = new long[0];
+        this.pvTable = new int[0][];
+        this.pvLength = new int[0];
+        this.previousPv = new int[0];
+        this.previousPvLength = 0;
+        this.killers = new int[0][];
+        this.history = new int[MAX_CELLS];
+        this.lateMoves = 0;
+        this.widthCap = 0;
+        this.stats = new SearchStats();
+    }
+
+    /**
+     * setSelectivity turns on the selective search, which trades a little accuracy for depth.
+     * Late moves are searched one ply shallower with a null window, and again in full if
+     * they fail high; the width cap leaves the last moves of a node out altogether (never
+     * at the root or next to the leaves)
+     * @param lateMoves the number of moves searched in full before the reductions (0 for none)
+     * @param widthCap the number of moves searched at a node (0 for all)
+     */
+    public void setSelectivity(int lateMoves, int widthCap){
+        this.lateMoves = lateMoves;
+        this.widthCap = widthCap;
+    }
+
+    /**
+     * alphaBeta returns the minimax value and updates the index of the chosen solution
+     * @param currNode the node on which we are running alpha-beta "prunning"
+     * @param alpha the value of alpha
+     * @param beta the value of beta
+     * @param maxDepth the maximum depth of search
+     * @param deadline the time limit
+     * @return the alpha beta value. Also updates the bestIndex of the worker
+     * @throws SearchAbortedException if out of time or stopped (the bestIndex is still set if hasRootMove)
+     */
+    public int alphaBeta(Node currNode, int alpha, int beta, int maxDepth, Deadline deadline){
+        long startNanos = System.nanoTime();
+        long startBytes = SearchStats.allocatedBytes();
+        //Moves are made and unmade on a copy of the root state, with one reusable node per depth
+        searchBoard = currNode.getState().copy();
+        if(searchPlies.length <= maxDepth){
+            searchPlies = new Node[maxDepth + 1];
+            plyOrder = new int[maxDepth + 1][0];
+            pvTable = new int[maxDepth + 1][maxDepth + 1];
+            pvLength = new int[maxDepth + 2];
+            int[][] newKillers = new int[maxDepth + 1][];
+            for(int i = 0; i <= maxDepth; i++){
+                searchPlies[i] = new Node();
+                newKillers[i] = (i < killers.length) ? killers[i] : new int[]{NO_MOVE_KEY, NO_MOVE_KEY};
+            }
+            killers = newKillers;
+        }
+        //Older history counts less than the history of this search
+        for(int i = 0; i < MAX_CELLS; i++){
+            history[i] >>= 1;
+        }
+        //Start down the principal variation of the last search
+        followPv = true;
+        rootMoveFound = false;
+        this.deadline = deadline;
+        deadlineCountdown = DEADLINE_CHECK_INTERVAL;
+        try{
+            int value = alphaBetaRecursive(currNode, alpha, beta, maxDepth);
+            //Keep the principal variation of a finished search (a root fail low has none)
+            if(pvLength[0] > 0){
+                previousPv = Arrays.copyOf(pvTable[0], pvLength[0]);
+                previousPvLength = pvLength[0];
+            }
+            return value;
+        }
+        finally{
+            stats.countSearch(System.nanoTime() - startNanos, SearchStats.allocatedBytes() - startBytes);
+        }
+    }
+
+    /**
+     * alphaBetaRecursive is the helper recursive function of alphaBeta. Children are made
+     * on the search board and unmade after they have been searched
+     * @param currNode the node on which we are running alpha-beta "prunning"
+     * @param alpha the value of alpha
+     * @param beta the value of beta
+     * @param maxDepth the maximum depth of search
+     * @return the alpha beta value. Also updates the bestIndex variable to generate output node
+     * @throws SearchAbortedException if out of time or stopped
+     */
+    private int alphaBetaRecursive(Node currNode, int alpha, int beta, int maxDepth){
+        //Check if you have run out of time (reading the clock only every few nodes) or were told to stop
+        if(stopFlag.get() || deadline.isExpired() || (--deadlineCountdown <= 0 && deadlineReached())){
+            throw SearchAbortedException.INSTANCE;
+        }
+        //The principal variation from this node is empty until a move raises the bound
+        int depth = currNode.getDepth();
+        pvLength[depth] = depth;
+        //A node at the maximum depth is a leaf: only its evaluation is needed
+        if(currNode.getDepth() >= maxDepth){
+            stats.countLeaf(true);
+            return currNode.getTerminalValue();
+        }
+        /*********************TRANSPOSITION TABLE LOOKUP*******************/
+        //Done before the node is expanded, a cutoff here skips generating its actions
+        //Stored values are relative to the running score difference of the node
+        int scoreOffset = currNode.getMaxValue() - currNode.getMinValue();
+        int draft = maxDepth - currNode.getDepth();
+        int ttMove = TranspositionTable.NO_MOVE;
+        long entry = transpositionTable.probe(currNode.getHashKey());
+        stats.countProbe(entry != TranspositionTable.MISS);
+        if(entry != TranspositionTable.MISS){
+            ttMove = TranspositionTable.bestMoveOf(entry);
+            //Never cut at the root, where the best index must be set by the search itself
+            if(currNode.getDepth() > 0 && TranspositionTable.draftOf(entry) >= draft){
+                int ttValue = TranspositionTable.valueOf(entry) + scoreOffset;
+                int flag = TranspositionTable.flagOf(entry);
+                if(flag == TranspositionTable.EXACT){
+                    stats.countTableCutoff();
+                    return Math.max(alpha, Math.min(beta, ttValue));
+                }
+                if(flag == TranspositionTable.LOWER_BOUND && ttValue >= beta){
+                    stats.countTableCutoff();
+                    return beta;
+                }
+                if(flag == TranspositionTable.UPPER_BOUND && ttValue <= alpha){
+                    stats.countTableCutoff();
+                    return alpha;
+                }
+            }
+        }
+        //Test for the cutoff requirements (expands the node)
+        if(homework.cutOffSearch(currNode, maxDepth)){
+            //Return the terminal value of the node
+            stats.countLeaf(false);
+            return currNode.getTerminalValue();
+        }
+        //Order the actions: principal variation, table move, killers, then by history
+        int[] order = orderActions(currNode, ttMove);
+        //Save the original window to classify the result
+        int originalAlpha = alpha;
+        int originalBeta = beta;
+        int bestMove = TranspositionTable.NO_MOVE;
+        //Get the current player from the Node
+        String player = currNode.getPlayer();
+        //If player is MAX, set v <- -INF, recurse through children
+        if(player.contentEquals("MAX")){
+            //Instantiate v to negative infinity
+            int value = NEG_INFINITY;
+            //Get actions fro current Node
+            ActionList actionsList = currNode.getActionsList();
+            //Loop through actions list (best move from the table first)
+            for(int k = 0; k < actionsList.size(); k++){
+                if(isPastWidthCap(k, depth, draft, actionsList.size())){
+                    break;
+                }
+                int i = order[rootRotation(k, depth, actionsList.size())];
+                //Make the move on the search board
+                Node newNode = makeSearchMove(currNode, i);
+                
+                stats.countNode();
+
+                //Principal variation search: the first move gets the full window, the others a
+                //null window proving they are no better, re-searched only if they turn out to be
+                if(k == 0){
+                    value = alphaBetaRecursive(newNode, alpha, beta, maxDepth);
+                }
+                else{
+                    //A late small move is first searched a ply shallower, and to the full depth if it fails high
+                    boolean reduced = isReduced(k, draft, actionsList.getComponentSize(i));
+                    value = alphaBetaRecursive(newNode, alpha, alpha + NULL_WINDOW, reduced ? maxDepth - 1 : maxDepth);
+                    if(reduced){
+                        stats.countReduction(value > alpha);
+                        if(value > alpha){
+                            value = research(newNode, alpha, alpha + NULL_WINDOW, maxDepth);
+                        }
+                    }
+                    if(value > alpha && value < beta){
+                        value = research(newNode, alpha, beta, maxDepth);
+                    }
+                }
+                searchBoard.unmakeMove();
+                //Past the first child, this node is off the principal variation
+                followPv = false;
+                if(value > alpha){
+                    alpha = value;
+                    bestMove = i;
+                    updatePv(depth, moveKey(actionsList, i));
+                    //Save the value of the index at depth = 0
+                    if(currNode.getDepth() == 0){
+                        //Save the index of the best solution (at depth = 0)
+                        bestIndex = i;
+                        rootMoveFound = true;
+                    }
+                }
+                //Check if prunning possible
+                if(alpha >= beta){
+                    recordCutoff(depth, moveKey(actionsList, i), draft);
+                    stats.countCutoff(k == 0);
+                    break;
+                }
+            }
+            //Store the result: fail high is a lower bound, fail low an upper bound
+            int flag = (alpha >= originalBeta) ? TranspositionTable.LOWER_BOUND
+                    : (alpha > originalAlpha) ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+            transpositionTable.store(currNode.getHashKey(), draft, flag, alpha - scoreOffset, tableMove(currNode, bestMove));
+            //return the value
+            return alpha;
+        }
+        //If player is MIN, set v <- INF, recurse through children
+        else{
+            //Instantiate v to infinity
+            int value = INFINITY;
+            //Get actions fro current Node
+            ActionList actionsList = currNode.getActionsList();
+            //Loop through actions list (best move from the table first)
+            for(int k = 0; k < actionsList.size(); k++){
+                if(isPastWidthCap(k, depth, draft, actionsList.size())){
+                    break;
+                }
+                int i = order[rootRotation(k, depth, actionsList.size())];
+                //Make the move on the search board
+                Node newNode = makeSearchMove(currNode, i);
+                
+                stats.countNode();
+                
+                //Principal variation search, with the null window just below beta
+                if(k == 0){
+                    value = alphaBetaRecursive(newNode, alpha, beta, maxDepth);
+                }
+                else{
+                    //A late small move is first searched a ply shallower, and to the full depth if it fails low
+                    boolean reduced = isReduced(k, draft, actionsList.getComponentSize(i));
+                    value = alphaBetaRecursive(newNode, beta - NULL_WINDOW, beta, reduced ? maxDepth - 1 : maxDepth);
+                    if(reduced){
+                        stats.countReduction(value < beta);
+                        if(value < beta){
+                            value = research(newNode, beta - NULL_WINDOW, beta, maxDepth);
+                        }
+                    }
+                    if(value < beta && value > alpha){
+                        value = research(newNode, alpha, beta, maxDepth);
+                    }
+                }
+                searchBoard.unmakeMove();
+                //Past the first child, this node is off the principal variation
+                followPv = false;
+                if(value < beta){
+                    //Set beta to value (since value < beta)
+                    beta = value;
+                    bestMove = i;
+                    updatePv(depth, moveKey(actionsList, i));
+                    //Save the value of the index at depth = 0
+                    if(currNode.getDepth() == 0){
+                        //Save the index of the best solution (at depth = 0)
+                        bestIndex = i;
+                        rootMoveFound = true;
+                    }
+                }
+                //Check if prunning possible
+                if(alpha >= beta){ 
+                    recordCutoff(depth, moveKey(actionsList, i), draft);
+                    stats.countCutoff(k == 0);
+                    break;
+                }
+            }
+            //Store the result: fail low is an upper bound, fail high a lower bound
+            int flag = (beta <= originalAlpha) ? TranspositionTable.UPPER_BOUND
+                    : (beta < originalBeta) ? TranspositionTable.EXACT : TranspositionTable.LOWER_BOUND;
+            transpositionTable.store(currNode.getHashKey(), draft, flag, beta - scoreOffset, tableMove(currNode, bestMove));
+            //return the value
+            return beta;
+        }
+    }
+    
+    /**
+     * makeSearchMove applies the selected component to the search board in place and
+     * loads the result into the reusable node of the next depth. Every call must be
+     * matched by a searchBoard.unmakeMove() once the child has been searched
+     * @param currentNode the node on the search board
+     * @param selectedCompIndex the index of the actions list to play
+     * @return the reusable node of the next depth, holding the new state
+     */
+    private Node makeSearchMove(Node currentNode, int selectedCompIndex){
+        ActionList actionsList = currentNode.getActionsList();
+        //Remove the component and apply gravity on the search board (recorded for unmakeMove)
+        int removedInCol = searchBoard.makeMove(actionsList.getCells(selectedCompIndex), actionsList.getStart(selectedCompIndex), actionsList.getComponentSize(selectedCompIndex));
+        Node newNode = searchPlies[currentNode.getDepth() + 1];
+        homework.loadChildNode(newNode, currentNode, searchBoard, selectedCompIndex, removedInCol, labeller);
+        return newNode;
+    }
+
+    //Searches a child again with another window or depth, counted as a node like the first visit
+    //so that the leaves found again are matched in the node count
+    private int research(Node newNode, int alpha, int beta, int maxDepth){
+        stats.countNode();
+        return alphaBetaRecursive(newNode, alpha, beta, maxDepth);
+    }
+
+    //True if a move is searched a ply shallower: past the first moves, with depth left, and small
+    private boolean isReduced(int k, int draft, int componentSize){
+        return lateMoves > 0 && k >= lateMoves && draft >= REDUCTION_MIN_DRAFT && componentSize <= REDUCTION_MAX_SIZE;
+    }
+
+    //True if the moves of a node from the k-th on are left out by the width cap (counting them)
+    private boolean isPastWidthCap(int k, int depth, int draft, int numActions){
+        if(widthCap == 0 || k < widthCap || depth == 0 || draft < 2){
+            return false;
+        }
+        stats.countPruned(numActions - k);
+        return true;
+    }
+
+    /**
+     * tableMove converts the best action of a node to the form kept in the transposition
+     * table: its anchor in the orientation the node is hashed in, so that the entry also
+     * serves the mirror image of the board
+     * @param currNode the (expanded) node
+     * @param bestMove the index of the best action, or NO_MOVE
+     * @return the canonical anchor of the best action, or NO_MOVE
+     */
+    private static int tableMove(Node currNode, int bestMove){
+        if(bestMove == TranspositionTable.NO_MOVE){
+            return TranspositionTable.NO_MOVE;
+        }
+        return currNode.getActionsList().getCanonicalAnchor(bestMove, currNode.isMirrored());
+    }
+
+    /**
+     * orderActions builds the search order of the actions of a node. The move of the last
+     * principal variation comes first, then the move from the transposition table, then
+     * the others by size. Among components of the same size, the killer moves of the depth
+     * come first, then the others by history score, then in the order of the actions list
+     * @param currNode the (expanded) node
+     * @param ttMove the canonical anchor of the transposition table move, or NO_MOVE
+     * @return the indices of the actions list in search order
+     */
+    private int[] orderActions(Node currNode, int ttMove){
+        ActionList actionsList = currNode.getActionsList();
+        boolean mirrored = currNode.isMirrored();
+        int depth = currNode.getDepth();
+        int numActions = actionsList.size();
+        if(plyOrder[depth].length < numActions){
+            plyOrder[depth] = new int[numActions];
+        }
+        if(orderKeys.length < numActions){
+            orderKeys = new long[numActions];
+        }
+        //The principal variation move, while the path so far follows the last principal variation
+        int pvMove = (followPv && depth < previousPvLength) ? previousPv[depth] : NO_MOVE_KEY;
+        //The first child stays on the principal variation only if it plays the principal variation move
+        followPv = false;
+        int[] depthKillers = killers[depth];
+        for(int i = 0; i < numActions; i++){
+            int move = moveKey(actionsList, i);
+            int score;
+            if(move == pvMove){
+                score = PV_SCORE;
+                followPv = true;
+            }
+            else if(actionsList.getCanonicalAnchor(i, mirrored) == ttMove){
+                score = TT_SCORE;
+            }
+            else{
+                //Larger components first, then killers, then by history
+                int killer = (move == depthKillers[0]) ? 2 : (move == depthKillers[1]) ? 1 : 0;
+                score = (actionsList.getComponentSize(i) << SIZE_SCORE_SHIFT) | (killer << KILLER_SCORE_SHIFT) | history[actionsList.getAnchor(i)];
+            }
+            //Higher scores sort first, then lower indices
+            orderKeys[i] = ((long)(PV_SCORE - score) << ORDER_INDEX_BITS) | i;
+        }
+        Arrays.sort(orderKeys, 0, numActions);
+        int[] order = plyOrder[depth];
+        for(int k = 0; k < numActions; k++){
+            order[k] = (int)(orderKeys[k] & ORDER_INDEX_MASK);
+        }
+        return order;
+    }
+
+    /**
+     * moveKey identifies an action across positions by its anchor cell and size: a
+     * component left untouched by the moves in between keeps both
+     * @param actionsList the actions list of the node
+     * @param index the index of the action
+     * @return the key of the move
+     */
+    private static int moveKey(ActionList actionsList, int index){
+        return (actionsList.getComponentSize(index) << MOVE_ANCHOR_BITS) | actionsList.getAnchor(index);
+    }
+
+    /**
+     * rootRotation maps the position in the search order for this worker. At the root,
+     * helper workers rotate the order of all but the first action by their id, so that
+     * the workers start on different parts of the tree
+     * @param k the position in the search order
+     * @param depth the depth of the node
+     * @param numActions the number of actions of the node
+     * @return the position in the search order of the node
+     */
+    private int rootRotation(int k, int depth, int numActions){
+        if(depth == 0 && id > 0 && k > 0 && numActions > 2){
+            return 1 + (k - 1 + id) % (numActions - 1);
+        }
+        return k;
+    }
+
+    /**
+     * updatePv makes the move the head of the principal variation of its depth, followed
+     * by the principal variation of the child
+     * @param depth the depth of the node
+     * @param move the key of the move
+     */
+    private void updatePv(int depth, int move){
+        int[] pv = pvTable[depth];
+        pv[depth] = move;
+        int childLength = pvLength[depth + 1];
+        if(childLength > depth + 1){
+            System.arraycopy(pvTable[depth + 1], depth + 1, pv, depth + 1, childLength - depth - 1);
+            pvLength[depth] = childLength;
+        }
+        else{
+            pvLength[depth] = depth + 1;
+        }
+    }
+
+    /**
+     * recordCutoff makes a move that caused a cutoff the first killer of its depth and,
+     * above the last ply, raises the history score of its anchor cell by the square of
+     * the remaining depth (cutoffs next to the leaves are too many and too noisy)
+     * @param depth the depth of the node
+     * @param move the key of the move
+     * @param draft the remaining depth of the node
+     */
+    private void recordCutoff(int depth, int move, int draft){
+        int[] depthKillers = killers[depth];
+        if(depthKillers[0] != move){
+            depthKillers[1] = depthKillers[0];
+            depthKillers[0] = move;
+        }
+        if(draft < 2){
+            return;
+        }
+        int anchor = move & MOVE_ANCHOR_MASK;
+        history[anchor] += draft * draft;
+        //Keep history scores below the killer rank
+        if(history[anchor] >= MAX_HISTORY){
+            for(int i = 0; i < MAX_CELLS; i++){
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * newGame forgets the move ordering learned on an earlier root (principal
+     * variation, killers and history), before the search of a new position
+     */
+    public void newGame(){
+        previousPvLength = 0;
+        for(int[] depthKillers : killers){
+            Arrays.fill(depthKillers, NO_MOVE_KEY);
+        }
+        Arrays.fill(history, 0);
+        bestIndex = 0;
+    }
+
+    /**
+     * getPrincipalVariation returns the principal variation of the last completed search
+     * @return the anchor cells (row-major indices) of the moves, one per ply
+     */
+    public int[] getPrincipalVariation(){
+        int[] anchors = new int[previousPvLength];
+        for(int i = 0; i < previousPvLength; i++){
+            anchors[i] = previousPv[i] & MOVE_ANCHOR_MASK;
+        }
+        return anchors;
+    }
+
+    /**
+     * deadlineReached reads the clock and restarts the countdown to the next reading
+     * @return true if the time is up
+     */
+    private boolean deadlineReached(){
+        deadlineCountdown = DEADLINE_CHECK_INTERVAL;
+        return deadline.reached();
+    }
+
+    /**
+     * hasRootMove tells if the last search (even an aborted one) has completed the search
+     * of a root action that is better than all the others searched before it. The first
+     * root action searched is the best of the iteration before, so the bestIndex of an
+     * aborted search is usable once this is true
+     * @return true if the bestIndex was set by the last search
+     */
+    public boolean hasRootMove(){
+        return rootMoveFound;
+    }
+
+    /**
+     * getId returns the id of the worker
+     * @return the id of the worker (0 is the main worker)
+     */
+    public int getId(){
+        return id;
+    }
+
+    /**
+     * getBestIndex returns the index of the best root action found by the last search
+     * @return the index of the best root action
+     */
+    public int getBestIndex(){
+        return bestIndex;
+    }
+
+    /**
+     * getStats returns the counts of the searches of this worker
+     * @return the stats of the worker
+     */
+    public SearchStats getStats(){
+        return stats;
+    }
+}
+
+/*******************************************************************************
+ * The EndgameSolver class plays out sparse positions to the end of the game,
+ * exactly. The game is the same for both players (each move scores its size
+ * squared for the player making it), so a position is solved as a negamax on
+ * the difference between the score of the player to move and the score of the
+ * opponent from there. Moves are made and unmade on one board, with one reusable
+ * actions list per ply. Solved positions are memoised by the canonical Zobrist
+ * key of their cells (the side to move does not matter, and a position shares
+ * its entry with its mirror image), with their bound and best move, in a table
+ * that keeps the latest entry of each slot. The keys include the board size,
+ * and the table is also emptied when a board of another size is solved.
+ *******************************************************************************/
+class EndgameSolver{
+    public static final int DEFAULT_SIZE_BITS = 18;
+    private static final int EXACT = 0;
+    private static final int LOWER_BOUND = 1;
+    private static final int UPPER_BOUND = 2;
+    private static final int FLAG_BITS = 2;
+    private static final int FLAG_MASK = (1 << FLAG_BITS) - 1;
+    //Bits of an entry holding the anchor of the best move (below 26 * 26 < 2^16), the value is above them
+    private static final int ANCHOR_BITS = 16;
+    private static final int ANCHOR_MASK = (1 << ANCHOR_BITS) - 1;
+    private static final int VALUE_SHIFT = 32;
+    private static final int NO_ANCHOR = ANCHOR_MASK;
+    //Bound above any score difference (at most (26 * 26)^2 < 2^19), small enough not to overflow when negated and shifted
+    private static final int INFINITY = 1 << 30;
+    //Number of nodes between two readings of the clock
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private final ComponentLabeller labeller;
+    //Board the moves are made on, and the actions of each ply
+    private Board board;
+    private ActionList[] plyActions;
+    //Size of the boards whose positions are memoised (0 before the first solve)
+    private int boardSize;
+    private int bestIndex;
+    //Deepest ply the last solve reached
+    private int maxPly;
+    private Deadline deadline;
+    private int deadlineCountdown;
+    private SearchStats stats;
+
+    /**
+     * EndgameSolver constructor
+     * @param sizeBits the base 2 logarithm of the number of memoised positions
+     */
+    public EndgameSolver(int sizeBits){
+        this.keys = new long[1 << sizeBits];
+        this.entries = new long[1 << sizeBits];
+        this.mask = (1 << sizeBits) - 1;
+        this.labeller = new ComponentLabeller();
+        this.plyActions = new ActionList[0];
+    }
+
+    /**
+     * applies tells if a position is sparse enough to be solved: few components (so few
+     * moves to try at each ply) and few fruits (so few plies to the end of the game)
+     * @param numComponents the number of components of the position
+     * @param numFruits the number of fruits of the position
+     * @param maxComponents the largest number of components solved (0 to never solve)
+     * @param maxFruits the largest number of fruits solved (0 to never solve)
+     * @return true if the position should be solved
+     */
+    public static boolean applies(int numComponents, int numFruits, int maxComponents, int maxFruits){
+        return numComponents <= maxComponents && numFruits <= maxFruits;
+    }
+
+    /**
+     * solve returns the exact value of a position for the player to move: the most the
+     * player can score more than the opponent from there, both playing perfectly
+     * @param root the position
+     * @param deadline the time limit
+     * @param stats the statistics the nodes are counted in
+     * @return the value of the position. Also updates the best index (in the order of the
+     * position's actions list)
+     * @throws SearchAbortedException if out of time
+     */
+    public int solve(Board root, Deadline deadline, SearchStats stats){
+        board = root.copy();
+        if(board.getSize() != boardSize){
+            boardSize = board.getSize();
+            Arrays.fill(keys, 0L);
+            Arrays.fill(entries, 0L);
+        }
+        this.deadline = deadline;
+        this.deadlineCountdown = DEADLINE_CHECK_INTERVAL;
+        this.stats = stats;
+        bestIndex = 0;
+        maxPly = 0;
+        ensurePlies(0);
+        labeller.label(board, plyActions[0]);
+        return negamax(0, -INFINITY, INFINITY);
+    }
+
+    /**
+     * getBestIndex returns the index of the best action of the last position solved
+     * @return the index of the best action
+     */
+    public int getBestIndex(){
+        return bestIndex;
+    }
+
+    /**
+     * getDepth returns the deepest ply the last solve reached (also when it ran out of time)
+     * @return the depth of the last solve, in plies
+     */
+    public int getDepth(){
+        return maxPly;
+    }
+
+    /**
+     * getPrincipalVariation replays the best moves memoised from the last position solved
+     * (stopping at the first position whose exact value was not kept)
+     * @return the anchor cells (row-major indices) of the moves of perfect play
+     */
+    public int[] getPrincipalVariation(){
+        int[] line = new int[board.getSize() * board.getSize()];
+        int length = 0;
+        int ply = 0;
+        while(!plyActions[ply].isEmpty()){
+            long key = board.getCanonicalKey();
+            int slot = (int)key & mask;
+            if(keys[slot] != key || (entries[slot] & FLAG_MASK) != EXACT){
+                break;
+            }
+            int index = findAnchor(plyActions[ply], (int)(entries[slot] >>> FLAG_BITS) & ANCHOR_MASK, board.isMirrored());
+            if(index < 0){
+                break;
+            }
+            line[length++] = plyActions[ply].getAnchor(index);
+            ensurePlies(ply + 1);
+            makeMove(ply, index);
+            ply++;
+        }
+        for(; ply > 0; ply--){
+            board.unmakeMove();
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    //Negamax with alpha-beta bounds, memoised, from the position of a ply
+    private int negamax(int ply, int alpha, int beta){
+        //Check if you have run out of time (reading the clock only every few nodes)
+        if(deadline.isExpired() || (--deadlineCountdown <= 0 && deadlineReached())){
+            throw SearchAbortedException.INSTANCE;
+        }
+        maxPly = Math.max(maxPly, ply);
+        ActionList actions = plyActions[ply];
+        //End of the game: nobody scores any more
+        if(actions.isEmpty()){
+            stats.countLeaf(false);
+            return 0;
+        }
+        //Both orientations share an entry, whose best move is kept as its canonical anchor
+        long key = board.getCanonicalKey();
+        boolean mirrored = board.isMirrored();
+        int slot = (int)key & mask;
+        int memoAnchor = NO_ANCHOR;
+        stats.countProbe(keys[slot] == key);
+        if(keys[slot] == key){
+            long entry = entries[slot];
+            int value = (int)(entry >> VALUE_SHIFT);
+            int flag = (int)entry & FLAG_MASK;
+            memoAnchor = (int)(entry >>> FLAG_BITS) & ANCHOR_MASK;
+            if(flag == EXACT || (flag == LOWER_BOUND && value >= beta) || (flag == UPPER_BOUND && value <= alpha)){
+                if(ply > 0){
+                    stats.countTableCutoff();
+                    return value;
+                }
+            }
+        }
+        ensurePlies(ply + 1);
+        int originalAlpha = alpha;
+        int best = Integer.MIN_VALUE;
+        int bestMove = 0;
+        //The memoised best move first, then the others largest first
+        int first = findAnchor(actions, memoAnchor, mirrored);
+        int firstK = (first < 0) ? 0 : -1;
+        for(int k = firstK; k < actions.size(); k++){
+            int i = (k < 0) ? first : k;
+            if(k >= 0 && i == first){
+                continue;
+            }
+            int size = actions.getComponentSize(i);
+            int score = size * size;
+            makeMove(ply, i);
+            stats.countNode();
+            int value = score - negamax(ply + 1, score - beta, score - alpha);
+            board.unmakeMove();
+            if(value > best){
+                best = value;
+                bestMove = i;
+                if(best > alpha){
+                    alpha = best;
+                    if(alpha >= beta){
+                        stats.countCutoff(k == firstK);
+                        break;
+                    }
+                }
+            }
+        }
+        int flag = (best <= originalAlpha) ? UPPER_BOUND : (best >= beta) ? LOWER_BOUND : EXACT;
+        keys[slot] = key;
+        entries[slot] = ((long)best << VALUE_SHIFT) | ((long)actions.getCanonicalAnchor(bestMove, mirrored) << FLAG_BITS) | flag;
+        if(ply == 0){
+            bestIndex = bestMove;
+        }
+        return best;
+    }
+
+    //Makes an action of a ply on the board and labels the actions of the next ply
+    private void makeMove(int ply, int index){
+        ActionList actions = plyActions[ply];
+        int touchedColumns = board.makeMove(actions.getCells(index), actions.getStart(index), actions.getComponentSize(index));
+        labeller.relabel(board, actions, touchedColumns, plyActions[ply + 1]);
+    }
+
+    //Index of the action with a canonical anchor cell (-1 if none)
+    private static int findAnchor(ActionList actions, int anchor, boolean mirrored){
+        if(anchor == NO_ANCHOR){
+            return -1;
+        }
+        for(int i = 0; i < actions.size(); i++){
+            if(actions.getCanonicalAnchor(i, mirrored) == anchor){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Makes sure there is an actions list up to a ply
+    private void ensurePlies(int ply){
+        if(plyActions.length <= ply){
+            ActionList[] newPlies = Arrays.copyOf(plyActions, Math.max(ply + 1, 2 * plyActions.length));
+            for(int i = plyActions.length; i < newPlies.length; i++){
+                newPlies[i] = new ActionList();
+            }
+            plyActions = newPlies;
+        }
+    }
+
+    //Reads the clock, resetting the countdown to the next reading
+    private boolean deadlineReached(){
+        deadlineCountdown = DEADLINE_CHECK_INTERVAL;
+        return deadline.reached();
+    }
+}
+
+/*******************************************************************************
+ * The MctsNode class is a node of a Monte-Carlo search tree: the action that
+ * leads to it (its index in the parent's actions list, and its anchor cell),
+ * its children (created one at a time, largest component first) and the
+ * results of the playouts through it, counted for the player who made the
+ * action.
+ *******************************************************************************/
+class MctsNode{
+    private final int actionIndex;
+    private final int anchor;
+    private MctsNode[] children;
+    private int numChildren;
+    private int visits;
+    private double wins;
+    private long marginSum;
+
+    /**
+     * MctsNode constructor
+     * @param actionIndex the index of the action in the parent's actions list (-1 for the root)
+     * @param anchor the anchor cell of the action (-1 for the root)
+     */
+    public MctsNode(int actionIndex, int anchor){
+        this.actionIndex = actionIndex;
+        this.anchor = anchor;
+    }
+
+    /**
+     * isExpanded tells if the actions of the node are known
+     * @return true if the node was expanded
+     */
+    public boolean isExpanded(){
+        return children != null;
+    }
+
+    /**
+     * expand makes room for the children of the node
+     * @param numActions the number of actions of the node
+     */
+    public void expand(int numActions){
+        children = new MctsNode[numActions];
+    }
+
+    /**
+     * isFullyExpanded tells if every action of the node has a child
+     * @return true if all the children exist
+     */
+    public boolean isFullyExpanded(){
+        return numChildren == children.length;
+    }
+
+    /**
+     * addChild creates the child of the next action without one
+     * @param anchor the anchor cell of that action
+     * @return the new child
+     */
+    public MctsNode addChild(int anchor){
+        MctsNode child = new MctsNode(numChildren, anchor);
+        children[numChildren++] = child;
+        return child;
+    }
+
+    /**
+     * getNextActionIndex returns the index of the action addChild creates the child of
+     * @return the index of the next action without a child
+     */
+    public int getNextActionIndex(){
+        return numChildren;
+    }
+
+    /**
+     * getNumChildren returns the number of children created
+     * @return the number of children
+     */
+    public int getNumChildren(){
+        return numChildren;
+    }
+
+    /**
+     * getChild returns a child
+     * @param index the index of the child (the index of its action)
+     * @return the child
+     */
+    public MctsNode getChild(int index){
+        return children[index];
+    }
+
+    /**
+     * update counts the result of one playout through the node
+     * @param reward 1 for a win of the player who made the action, 0.5 for a draw, 0 for a loss
+     * @param margin the points that player scored more than the opponent
+     */
+    public void update(double reward, int margin){
+        visits++;
+        wins += reward;
+        marginSum += margin;
+    }
+
+    /**
+     * getActionIndex returns the index of the action in the parent's actions list
+     * @return the index of the action
+     */
+    public int getActionIndex(){
+        return actionIndex;
+    }
+
+    /**
+     * getAnchor returns the anchor cell (row-major index) of the action
+     * @return the anchor of the action
+     */
+    public int getAnchor(){
+        return anchor;
+    }
+
+    /**
+     * getVisits returns the number of playouts through the node
+     * @return the number of visits
+     */
+    public int getVisits(){
+        return visits;
+    }
+
+    /**
+     * getWins returns the sum of the rewards of the playouts through the node
+     * @return the sum of the rewards
+     */
+    public double getWins(){
+        return wins;
+    }
+
+    /**
+     * getMarginSum returns the sum of the margins of the playouts through the node
+     * @return the sum of the margins
+     */
+    public long getMarginSum(){
+        return marginSum;
+    }
+}
+
+/*******************************************************************************
+ * The MctsSearcher class runs a Monte-Carlo tree search (UCT) for one thread,
+ * an alternative to alpha-beta for boards whose branching is too wide for it
+ * to reach a useful depth. Each iteration walks down the tree by the UCT rule,
+ * adds one child, then plays the game out to the end, picking the largest
+ * component or a random one. Moves are made and unmade on one board, with one
+ * reusable actions list per ply updated from the one before (relabel), so
+ * playouts do not allocate once the lists exist.
+ * Rewards are the result of the game from the root (win, draw or loss, taking
+ * the margin already on the board into account). Several searchers grow their
+ * own trees from the same root and their root statistics are added up (root
+ * parallelism).
+ *******************************************************************************/
+class MctsSearcher{
+    //Exploration constant of the UCT rule, for rewards between 0 and 1
+    private static final double EXPLORATION = 0.7;
+    //Share of the playout moves that take the largest component instead of a random one
+    private static final double GREEDY_PLAYOUT_RATE = 0.5;
+    private static final double WIN = 1;
+    private static final double DRAW = 0.5;
+    private static final double LOSS = 0;
+    private final Random random;
+    private final ComponentLabeller labeller;
+    private final SearchStats stats;
+    private ActionList[] plyActions;
+    private Board board;
+    private MctsNode root;
+    private MctsNode[] path;
+    private int maxTreeDepth;
+
+    /**
+     * MctsSearcher constructor
+     * @param seed the seed of the playouts of this searcher
+     */
+    public MctsSearcher(long seed){
+        this.random = new Random(seed);
+        this.labeller = new ComponentLabeller();
+        this.stats = new SearchStats();
+        this.plyActions = new ActionList[0];
+        this.path = new MctsNode[0];
+    }
+
+    /**
+     * search grows a new tree from a position until the time is up or the playouts are done
+     * @param rootState the position, the player to move being the root player
+     * @param rootMargin the points the root player is already ahead by
+     * @param deadline the time limit
+     * @param maxPlayouts the largest number of playouts
+     */
+    public void search(Board rootState, int rootMargin, Deadline deadline, long maxPlayouts){
+        long startNanos = System.nanoTime();
+        long startBytes = SearchStats.allocatedBytes();
+        board = rootState.copy();
+        root = new MctsNode(-1, -1);
+        maxTreeDepth = 0;
+        if(path.length <= board.getSize() * board.getSize()){
+            path = new MctsNode[board.getSize() * board.getSize() + 1];
+        }
+        for(long playouts = 0; playouts < maxPlayouts && !deadline.reached(); playouts++){
+            iterate(rootMargin);
+        }
+        stats.countSearch(System.nanoTime() - startNanos, SearchStats.allocatedBytes() - startBytes);
+    }
+
+    //One iteration: selection, expansion of one child, playout to the end of the game, and backpropagation
+    private void iterate(int rootMargin){
+        MctsNode node = root;
+        int depth = 0;
+        //Points the root player scored more than the opponent since the root
+        int margin = 0;
+        int movesMade = 0;
+        path[0] = root;
+        ensurePlies(0);
+        labeller.label(board, plyActions[0]);
+        //Walk down the tree until a child is added (or the game ends in the tree)
+        boolean added = false;
+        while(!added && !plyActions[depth].isEmpty()){
+            ActionList actions = plyActions[depth];
+            if(!node.isExpanded()){
+                node.expand(actions.size());
+            }
+            MctsNode child;
+            if(!node.isFullyExpanded()){
+                child = node.addChild(actions.getAnchor(node.getNextActionIndex()));
+                added = true;
+            }
+            else{
+                child = selectChild(node);
+            }
+            margin += moveScore(actions, child.getActionIndex(), depth);
+            makeMove(depth, child.getActionIndex());
+            movesMade++;
+            path[++depth] = child;
+            node = child;
+        }
+        maxTreeDepth = Math.max(maxTreeDepth, depth);
+        //Play out the rest of the game
+        for(int ply = depth; !plyActions[ply].isEmpty(); ply++){
+            ActionList actions = plyActions[ply];
+            int index = (random.nextDouble() < GREEDY_PLAYOUT_RATE) ? 0 : random.nextInt(actions.size());
+            margin += moveScore(actions, index, ply);
+            makeMove(ply, index);
+            movesMade++;
+        }
+        stats.countLeaf(false);
+        for(; movesMade > 0; movesMade--){
+            board.unmakeMove();
+        }
+        int total = rootMargin + margin;
+        double reward = (total > 0) ? WIN : (total < 0) ? LOSS : DRAW;
+        //Odd depths were reached by a move of the root player
+        for(int d = 0; d <= depth; d++){
+            boolean rootPlayerMoved = (d % 2 == 1);
+            path[d].update(rootPlayerMoved ? reward : WIN - reward, rootPlayerMoved ? margin : -margin);
+        }
+    }
+
+    //Child with the best UCT value: its win rate plus the exploration bonus
+    private MctsNode selectChild(MctsNode node){
+        double logVisits = Math.log(node.getVisits());
+        MctsNode best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < node.getNumChildren(); i++){
+            MctsNode child = node.getChild(i);
+            double value = child.getWins() / child.getVisits() + EXPLORATION * Math.sqrt(logVisits / child.getVisits());
+            if(value > bestValue){
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    //Points of an action for the root player (negative for the opponent, who moves at odd plies)
+    private static int moveScore(ActionList actions, int index, int ply){
+        int score = actions.componentScore(index);
+        return (ply % 2 == 0) ? score : -score;
+    }
+
+    //Makes an action of a ply on the board and labels the actions of the next ply
+    private void makeMove(int ply, int index){
+        ActionList actions = plyActions[ply];
+        int touchedColumns = board.makeMove(actions.getCells(index), actions.getStart(index), actions.getComponentSize(index));
+        stats.countNode();
+        ensurePlies(ply + 1);
+        labeller.relabel(board, actions, touchedColumns, plyActions[ply + 1]);
+    }
+
+    //Makes sure there is an actions list up to a ply
+    private void ensurePlies(int ply){
+        if(plyActions.length <= ply){
+            ActionList[] newPlies = Arrays.copyOf(plyActions, Math.max(ply + 1, 2 * plyActions.length));
+            for(int i = plyActions.length; i < newPlies.length; i++){
+                newPlies[i] = new ActionList();
+            }
+            plyActions = newPlies;
+        }
+    }
+
+    /**
+     * getRoot returns the root of the last tree
+     * @return the root node
+     */
+    public MctsNode getRoot(){
+        return root;
+    }
+
+    /**
+     * getMaxTreeDepth returns the depth of the deepest node added to the last tree
+     * @return the depth of the tree
+     */
+    public int getMaxTreeDepth(){
+        return maxTreeDepth;
+    }
+
+    /**
+     * getStats returns the counts of this searcher
+     * @return the stats of the searcher
+     */
+    public SearchStats getStats(){
+        return stats;
+    }
+}
+
+/*******************************************************************************
+ * The SearchBenchmark class measures the hot paths of the engine (node
+ * construction, generateNewNode, component scores and a fixed depth alpha-beta)
+ * on seeded boards of several sizes and fruit counts, so optimisations can be
+ * compared against a baseline. It is run with "java homework -bench". This is a
+ * rough timing loop, not a benchmark harness: a few timed iterations in one
+ * virtual machine after a short warmup (for the JIT), without forks or
+ * confidence intervals. It reports the mean rate of calls with the slowest and
+ * fastest iteration, and the bytes the thread allocated per call (its counter,
+ * not a GC profiler), which are only worth comparing between runs on one machine.
+ * Options: -benchTime <ms per iteration>, -benchFilter <benchmark name part>
+ *******************************************************************************/
+class SearchBenchmark{
+    private static final int[] BOARD_SIZES = {5, 10, 15, 20, 26};
+    private static final int MIN_FRUITS = 2;
+    private static final int MAX_FRUITS = 9;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 3;
+    private static final long DEFAULT_ITERATION_MS = 200;
+    private static final int SEARCH_DEPTH = 3;
+    private static final int BENCH_TT_SIZE_BITS = 16;
+    private static final double NANOS_PER_SEC = 1e9;
+    private static final String[] BENCHMARKS = {"node", "generateNewNode", "componentScore", "alphaBeta"};
+    private static final Deadline NO_DEADLINE = Deadline.none();
+    //Results are accumulated here so that the JIT cannot drop the measured work
+    private static double sink;
+
+    /**
+     * run parses the benchmark options and prints one line per benchmark, board size and fruit count
+     * @param args the command line arguments
+     */
+    public static void run(String[] args){
+        long iterationMs = DEFAULT_ITERATION_MS;
+        String filter = "";
+        for(int i = 0; i + 1 < args.length; i++){
+            if(args[i].equals("-benchTime")){
+                iterationMs = Long.parseLong(args[i + 1]);
+            }
+            else if(args[i].equals("-benchFilter")){
+                filter = args[i + 1];
+            }
+        }
+        System.out.println("Rough timing loop (" + WARMUP_ITERATIONS + " warmup, " + MEASURED_ITERATIONS + " timed iterations of " + iterationMs
+                + " ms in one JVM): compare runs on the same machine only");
+        System.out.println(String.format("%-16s %5s %6s %14s %14s %14s %16s", "Benchmark", "Size", "Fruits", "calls/s (mean)", "slowest", "fastest", "thread bytes/call"));
+        for(String benchmark : BENCHMARKS){
+            if(!benchmark.contains(filter)){
+                continue;
+            }
+            for(int size : BOARD_SIZES){
+                for(int fruits = MIN_FRUITS; fruits <= MAX_FRUITS; fruits++){
+                    measure(benchmark, size, fruits, iterationMs);
+                }
+            }
+        }
+        //Printed so that the sink is used
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * seededBoard builds a full board with random fruits, the same for each size and fruit count
+     * @param size the width and height of the board
+     * @param fruits the number of fruit types
+     * @return the new board
+     */
+    public static Board seededBoard(int size, int fruits){
+        Random random = new Random(size * 31L + fruits);
+        Board board = new Board(size);
+        for(int i = 0; i < size; i++){
+            for(int j = 0; j < size; j++){
+                board.set(i, j, random.nextInt(fruits));
+            }
+        }
+        return board;
+    }
+
+    /**
+     * measure runs the warmup and measured iterations of one benchmark and prints the result
+     * @param benchmark the name of the benchmark
+     * @param size the width and height of the board
+     * @param fruits the number of fruit types
+     * @param iterationMs the duration of an iteration in milliseconds
+     */
+    private static void measure(String benchmark, int size, int fruits, long iterationMs){
+        Board board = seededBoard(size, fruits);
+        Node root = new Node(board, 0, 0, 0, "MAX");
+        TranspositionTable transpositionTable = new TranspositionTable(BENCH_TT_SIZE_BITS);
+        SearchWorker worker = new SearchWorker(0, transpositionTable, new AtomicBoolean());
+        double[] callsPerSec = new double[MEASURED_ITERATIONS];
+        long allocated = 0;
+        long measuredOps = 0;
+        for(int iteration = 0; iteration < WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++){
+            long allocatedBefore = SearchStats.allocatedBytes();
+            long start = System.nanoTime();
+            long end = start + iterationMs * 1000000L;
+            long ops = 0;
+            long now;
+            do{
+                sink += runOnce(benchmark, board, root, worker, transpositionTable, ops);
+                ops++;
+                now = System.nanoTime();
+            }while(now < end);
+            long allocatedAfter = SearchStats.allocatedBytes();
+            if(iteration >= WARMUP_ITERATIONS){
+                callsPerSec[iteration - WARMUP_ITERATIONS] = ops * NANOS_PER_SEC / (now - start);
+                allocated += allocatedAfter - allocatedBefore;
+                measuredOps += ops;
+            }
+        }
+        //Mean and range of the timed iterations (too few of them for a standard deviation to mean much)
+        double mean = 0;
+        double slowest = Double.MAX_VALUE;
+        double fastest = 0;
+        for(double value : callsPerSec){
+            mean += value;
+            slowest = Math.min(slowest, value);
+            fastest = Math.max(fastest, value);
+        }
+        mean /= MEASURED_ITERATIONS;
+        String bytesPerCall = (SearchStats.allocatedBytes() < 0) ? "n/a" : String.format("%.1f", (double)allocated / measuredOps);
+        System.out.println(String.format("%-16s %5d %6d %14.1f %14.1f %14.1f %16s", benchmark, size, fruits, mean, slowest, fastest, bytesPerCall));
+    }
+
+    /**
+     * runOnce runs one operation of a benchmark
+     * @param benchmark the name of the benchmark
+     * @param board the seeded board
+     * @param root the root node of the seeded board
+     * @param worker the worker for the alpha-beta benchmark
+     * @param transpositionTable the table of the worker
+     * @param op the number of the operation (cycles through the actions)
+     * @return a value depending on the work done
+     */
+    private static double runOnce(String benchmark, Board board, Node root, SearchWorker worker, TranspositionTable transpositionTable, long op){
+        switch(benchmark){
+            case "node":
+                //Labelling of the components and potential values
+                return new Node(board, 0, 0, 0, "MAX").getMaxPotential();
+            case "generateNewNode":
+                //Copy, removal, gravity and the child node
+                return homework.generateNewNode(root, (int)(op % root.getNumChildren())).getMinPotential();
+            case "componentScore":
+                ActionList actionsList = root.getActionsList();
+                int score = 0;
+                for(int i = 0; i < actionsList.size(); i++){
+                    score += actionsList.componentScore(i);
+                }
+                return score;
+            default:
+                //Every search starts from an empty table
+                transpositionTable.clear();
+                return worker.alphaBeta(root, SearchWorker.NEG_INFINITY, SearchWorker.INFINITY, SEARCH_DEPTH, NO_DEADLINE);
+        }
+    }
+}
+
+/*******************************************************************************
+ * The SpeedProfile class holds how fast this machine searches: for seeded boards
+ * of several sizes and fruit counts, the number of root actions (branching), the
+ * nodes searched per second and the effective branching factor of the deepening.
+ * It is measured by "java homework -calibrate" and saved to a profile file, which
+ * timeAllocation uses (when present) to plan the remaining game time.
+ * File format: one "size fruits branching nodesPerSec branchingFactor" line per
+ * board, lines starting with # are comments.
+ *******************************************************************************/
+class SpeedProfile{
+    public static final String DEFAULT_FILE = "calibration.txt";
+    private static final int[] CALIBRATION_SIZES = {5, 10, 15, 20, 26};
+    private static final int[] CALIBRATION_FRUITS = {3, 6, 9};
+    //Time spent deepening on each calibration board
+    private static final double CALIBRATION_MS = 300;
+    private static final int CALIBRATION_TT_SIZE_BITS = 16;
+    private static final int FIELDS = 5;
+    private final ArrayList<double[]> entries;
+
+    /**
+     * SpeedProfile constructor, for an empty profile
+     */
+    public SpeedProfile(){
+        this.entries = new ArrayList<>();
+    }
+
+    /**
+     * calibrate measures the speed of this machine on seeded boards. Each board is searched
+     * by iterative deepening (single thread, from an empty table) for a short time
+     * @return the measured profile
+     */
+    public static SpeedProfile calibrate(){
+        SpeedProfile profile = new SpeedProfile();
+        TranspositionTable transpositionTable = new TranspositionTable(CALIBRATION_TT_SIZE_BITS);
+        for(int size : CALIBRATION_SIZES){
+            for(int fruits : CALIBRATION_FRUITS){
+                Node root = new Node(SearchBenchmark.seededBoard(size, fruits), 0, 0, 0, "MAX");
+                transpositionTable.clear();
+                SearchWorker worker = new SearchWorker(0, transpositionTable, new AtomicBoolean());
+                long start = System.nanoTime();
+                Deadline deadline = Deadline.afterMillis(start, CALIBRATION_MS);
+                long[] depthNodes = new long[size * size + 1];
+                int completedDepths = 0;
+                try{
+                    for(int depth = 1; depth <= size * size; depth++){
+                        worker.getStats().reset();
+                        worker.alphaBeta(root, SearchWorker.NEG_INFINITY, SearchWorker.INFINITY, depth, deadline);
+                        depthNodes[depth] = worker.getStats().getNodes();
+                        completedDepths = depth;
+                    }
+                }
+                catch(SearchAbortedException ex){
+                    //Out of calibration time, the nodes of the unfinished depth still count for the speed
+                    depthNodes[completedDepths + 1] = worker.getStats().getNodes();
+                }
+                long nanos = System.nanoTime() - start;
+                long nodes = 0;
+                for(long count : depthNodes){
+                    nodes += count;
+                }
+                //Effective branching factor over the last completed depths
+                double branchingFactor = root.getNumChildren();
+                if(completedDepths >= 3 && depthNodes[completedDepths - 2] > 0){
+                    branchingFactor = Math.sqrt((double)depthNodes[completedDepths] / depthNodes[completedDepths - 2]);
+                }
+                else if(completedDepths == 2 && depthNodes[1] > 0){
+                    branchingFactor = (double)depthNodes[2] / depthNodes[1];
+                }
+                profile.add(size, fruits, root.getNumChildren(), nodes * 1e9 / Math.max(nanos, 1), Math.max(1.0, branchingFactor));
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * add adds the measurements of one board
+     * @param size the width and height of the board
+     * @param fruits the number of fruit types
+     * @param branching the number of root actions
+     * @param nodesPerSec the nodes searched per second
+     * @param branchingFactor the effective branching factor
+     */
+    public void add(int size, int fruits, int branching, double nodesPerSec, double branchingFactor){
+        entries.add(new double[]{size, fruits, branching, nodesPerSec, branchingFactor});
+    }
+
+    /**
+     * load reads a profile file
+     * @param fileName the name of the profile file
+     * @return the profile, or null if there is no (valid) profile file
+     */
+    public static SpeedProfile load(String fileName){
+        File file = new File(fileName);
+        if(!file.isFile()){
+            return null;
+        }
+        SpeedProfile profile = new SpeedProfile();
+        try(Scanner in = new Scanner(file)){
+            while(in.hasNextLine()){
+                String line = in.nextLine().trim();
+                if(line.isEmpty() || line.startsWith("#")){
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if(fields.length != FIELDS){
+                    Logger.getLogger(SpeedProfile.class.getName()).log(Level.WARNING, "Invalid profile line: {0}", line);
+                    return null;
+                }
+                profile.add(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+            }
+        }
+        catch(FileNotFoundException | NumberFormatException ex){
+            Logger.getLogger(SpeedProfile.class.getName()).log(Level.WARNING, null, ex);
+            return null;
+        }
+        return profile.entries.isEmpty() ? null : profile;
+    }
+
+    /**
+     * save writes the profile file
+     * @param fileName the name of the profile file
+     */
+    public void save(String fileName){
+        try(PrintStream out = new PrintStream(new FileOutputStream(fileName))){
+            out.println("#size fruits branching nodesPerSec branchingFactor");
+            for(double[] entry : entries){
+                out.println(String.format("%d %d %d %.1f %.3f", (int)entry[0], (int)entry[1], (int)entry[2], entry[3], entry[4]));
+            }
+        }
+        catch(FileNotFoundException ex){
+            Logger.getLogger(SpeedProfile.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * nodesPerSec returns the measured speed of the board closest to a position
+     * @param size the width and height of the board
+     * @param branching the number of root actions
+     * @return the nodes searched per second
+     */
+    public double nodesPerSec(int size, int branching){
+        return closest(size, branching)[3];
+    }
+
+    /**
+     * branchingFactor returns the measured effective branching factor of the board closest to a position
+     * @param size the width and height of the board
+     * @param branching the number of root actions
+     * @return the effective branching factor
+     */
+    public double branchingFactor(int size, int branching){
+        return closest(size, branching)[4];
+    }
+
+    //Entry of the closest board size, and among those of the closest branching
+    private double[] closest(int size, int branching){
+        double[] best = entries.get(0);
+        for(double[] entry : entries){
+            double sizeDistance = Math.abs(entry[0] - size);
+            double bestSizeDistance = Math.abs(best[0] - size);
+            if(sizeDistance < bestSizeDistance || (sizeDistance == bestSizeDistance && Math.abs(entry[2] - branching) < Math.abs(best[2] - branching))){
+                best = entry;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * toString returns the profile in the format of the profile file
+     * @return the profile lines
+     */
+    @Override
+    public String toString(){
+        StringBuilder profile = new StringBuilder();
+        for(double[] entry : entries){
+            profile.append(String.format("%d %d %d %.1f %.3f%n", (int)entry[0], (int)entry[1], (int)entry[2], entry[3], entry[4]));
+        }
+        return profile.toString();
+    }
+}
+
+/*******************************************************************************
+ * The IterationScheduler class decides whether the iterative deepening starts
+ * another iteration. The cost of the next iteration is predicted from the last
+ * one's time and the effective branching factor of the node counts, measured
+ * between iterations of the same parity (odd and even depths grow differently)
+ * and leaving out the first iteration (its time is mostly the warm-up of the
+ * virtual machine). An iteration is started unless it is predicted to take
+ * well over the time left, and the deadline stops it if it runs out; the
+ * prediction only keeps hopeless iterations from being started. The depth is
+ * capped by the number of fruits on the board (no game lasts longer), and
+ * deepening ends once an iteration has searched every line to the end of the game.
+ *******************************************************************************/
+class IterationScheduler{
+    //Iterations left out of the measurements
+    private static final int SKIPPED_ITERATIONS = 1;
+    //Measured iterations needed to predict from (the iterations before always start)
+    private static final int MIN_MEASURED = 2;
+    //Lowest branching factor assumed (a deeper search never costs less than this)
+    private static final double MIN_BRANCHING_FACTOR = 1.5;
+    //An iteration starts if it is predicted to take at most this many times the time left
+    private static final double START_MARGIN = 2.0;
+    private final int depthCap;
+    //Node counts of the completed iterations, and the time of the last one
+    private final long[] iterationNodes;
+    private long lastNanos;
+    private int iterations;
+    private boolean gameEndReached;
+
+    /**
+     * IterationScheduler constructor
+     * @param depthCap the maximum depth worth searching (the number of fruits on the board)
+     */
+    public IterationScheduler(int depthCap){
+        this.depthCap = depthCap;
+        this.iterationNodes = new long[Math.max(depthCap, 0) + 1];
+        this.iterations = 0;
+        this.gameEndReached = false;
+    }
+
+    /**
+     * record adds the measurements of a completed iteration
+     * @param nodes the number of nodes generated by the iteration
+     * @param nanos the time of the iteration in nanoseconds
+     * @param gameEndReached true if the iteration searched every line to the end of the game
+     */
+    public void record(long nodes, long nanos, boolean gameEndReached){
+        if(iterations < iterationNodes.length){
+            iterationNodes[iterations] = nodes;
+        }
+        lastNanos = nanos;
+        iterations++;
+        this.gameEndReached = gameEndReached;
+    }
+
+    /**
+     * branchingFactor returns the effective branching factor measured by the iterations after
+     * the first: the square root of the growth since the last iteration of the same parity, or
+     * the growth of the last iteration if there is no such iteration yet
+     * @return the effective branching factor
+     */
+    public double branchingFactor(){
+        int last = Math.min(iterations, iterationNodes.length) - 1;
+        int measured = last + 1 - SKIPPED_ITERATIONS;
+        double factor = MIN_BRANCHING_FACTOR;
+        if(measured >= 3 && iterationNodes[last - 2] > 0){
+            factor = Math.sqrt((double)iterationNodes[last] / iterationNodes[last - 2]);
+        }
+        else if(measured == 2 && iterationNodes[last - 1] > 0){
+            factor = (double)iterationNodes[last] / iterationNodes[last - 1];
+        }
+        return Math.max(MIN_BRANCHING_FACTOR, factor);
+    }
+
+    /**
+     * predictNanos returns the predicted time of the next iteration
+     * @return the predicted time in nanoseconds
+     */
+    public double predictNanos(){
+        return lastNanos * branchingFactor();
+    }
+
+    /**
+     * shouldStart tells if the next iteration is worth starting
+     * @param depth the depth of the next iteration
+     * @param remainingNanos the time left
+     * @return true if the iteration should be started
+     */
+    public boolean shouldStart(int depth, long remainingNanos){
+        if(depth > depthCap || gameEndReached){
+            return false;
+        }
+        if(iterations - SKIPPED_ITERATIONS < MIN_MEASURED){
+            return true;
+        }
+        return predictNanos() <= START_MARGIN * remainingNanos;
+    }
+}
+
+/*******************************************************************************
+ * The SearchConfig class holds the settings of a search engine: the number of
+ * search threads, the size of the transposition table, the speed profile used to
+ * plan the time (null if the machine was not calibrated), the stream the
+ * per-iteration statistics are written to (null for none), below how many
+ * components and fruits a position is solved exactly instead of searched,
+ * which engine chooses the moves: alpha-beta, Monte-Carlo tree search, or
+ * either depending on the board ("auto"), the file the transposition table is
+ * mapped from to keep it between runs (null for a table on the heap), and the
+ * selective search of alpha-beta: after how many moves the late ones are
+ * reduced, and how many moves are searched at most (0 to turn either off).
+ *******************************************************************************/
+class SearchConfig{
+    public static final int DEFAULT_TT_SIZE_BITS = 20;
+    public static final int DEFAULT_ENDGAME_COMPONENTS = 12;
+    public static final int DEFAULT_ENDGAME_FRUITS = 16;
+    public static final String ENGINE_AUTO = "auto";
+    public static final String ENGINE_ALPHA_BETA = "alphabeta";
+    public static final String ENGINE_MCTS = "mcts";
+    public static final int DEFAULT_LATE_MOVES = 0;
+    public static final int DEFAULT_WIDTH_CAP = 0;
+    private final int numThreads;
+    private final int ttSizeBits;
+    private final SpeedProfile profile;
+    private final PrintStream statsOut;
+    private final int endgameComponents;
+    private final int endgameFruits;
+    private final String engine;
+    private final String cacheFile;
+    private final int lateMoves;
+    private final int widthCap;
+
+    /**
+     * SearchConfig constructor, with the default endgame thresholds, alpha-beta, no cache file and full width
+     * @param numThreads the number of search threads
+     * @param ttSizeBits the base 2 logarithm of the number of transposition table entries
+     * @param profile the speed profile of the machine, or null
+     * @param statsOut the stream for the search statistics, or null
+     */
+    public SearchConfig(int numThreads, int ttSizeBits, SpeedProfile profile, PrintStream statsOut){
+        this(numThreads, ttSizeBits, profile, statsOut, DEFAULT_ENDGAME_COMPONENTS, DEFAULT_ENDGAME_FRUITS, ENGINE_ALPHA_BETA, null, DEFAULT_LATE_MOVES, DEFAULT_WIDTH_CAP);
+    }
+
+    /**
+     * SearchConfig constructor, used by the with methods to copy the settings
+     * @param numThreads the number of search threads
+     * @param ttSizeBits the base 2 logarithm of the number of transposition table entries
+     * @param profile the speed profile of the machine, or null
+     * @param statsOut the stream for the search statistics, or null
+     * @param endgameComponents the largest number of components solved exactly (0 for none)
+     * @param endgameFruits the largest number of fruits solved exactly (0 for none)
+     * @param engine the engine choosing the moves (ENGINE_AUTO, ENGINE_ALPHA_BETA or ENGINE_MCTS)
+     * @param cacheFile the file the transposition table is kept in between runs, or null
+     * @param lateMoves the number of moves searched in full before the late ones are reduced (0 for no reductions)
+     * @param widthCap the largest number of moves searched at a node (0 for all)
+     */
+    private SearchConfig(int numThreads, int ttSizeBits, SpeedProfile profile, PrintStream statsOut, int endgameComponents, int endgameFruits, String engine, String cacheFile, int lateMoves, int widthCap){
+        this.numThreads = Math.max(1, numThreads);
+        this.ttSizeBits = ttSizeBits;
+        this.profile = profile;
+        this.statsOut = statsOut;
+        this.endgameComponents = endgameComponents;
+        this.endgameFruits = endgameFruits;
+        this.engine = engine;
+        this.cacheFile = cacheFile;
+        this.lateMoves = lateMoves;
+        this.widthCap = widthCap;
+    }
+
+    /**
+     * withThreads returns the same settings with another number of threads and statistics stream
+     * @param numThreads the number of search threads
+     * @param statsOut the stream for the search statistics, or null
+     * @return the new settings
+     */
+    public SearchConfig withThreads(int numThreads, PrintStream statsOut){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, endgameComponents, endgameFruits, engine, cacheFile, lateMoves, widthCap);
+    }
+
+    /**
+     * withTtSizeBits returns the same settings with another transposition table size
+     * @param sizeBits the base 2 logarithm of the number of transposition table entries
+     * @return the new settings
+     */
+    public SearchConfig withTtSizeBits(int sizeBits){
+        return new SearchConfig(numThreads, sizeBits, profile, statsOut, endgameComponents, endgameFruits, engine, cacheFile, lateMoves, widthCap);
+    }
+
+    /**
+     * withEndgameComponents returns the same settings with another endgame component threshold
+     * @param components the largest number of components solved exactly (0 for none)
+     * @return the new settings
+     */
+    public SearchConfig withEndgameComponents(int components){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, components, endgameFruits, engine, cacheFile, lateMoves, widthCap);
+    }
+
+    /**
+     * withEndgameFruits returns the same settings with another endgame fruit threshold
+     * @param fruits the largest number of fruits solved exactly (0 for none)
+     * @return the new settings
+     */
+    public SearchConfig withEndgameFruits(int fruits){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, endgameComponents, fruits, engine, cacheFile, lateMoves, widthCap);
+    }
+
+    /**
+     * withEngine returns the same settings with another engine
+     * @param engineName the engine choosing the moves (ENGINE_AUTO, ENGINE_ALPHA_BETA or ENGINE_MCTS)
+     * @return the new settings
+     */
+    public SearchConfig withEngine(String engineName){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, endgameComponents, endgameFruits, engineName, cacheFile, lateMoves, widthCap);
+    }
+
+    /**
+     * withCacheFile returns the same settings with another cache file
+     * @param fileName the file the transposition table is kept in between runs, or null
+     * @return the new settings
+     */
+    public SearchConfig withCacheFile(String fileName){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, endgameComponents, endgameFruits, engine, fileName, lateMoves, widthCap);
+    }
+
+    /**
+     * withLateMoves returns the same settings with another late move threshold
+     * @param moves the number of moves searched in full before the late ones are reduced (0 for no reductions)
+     * @return the new settings
+     */
+    public SearchConfig withLateMoves(int moves){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, endgameComponents, endgameFruits, engine, cacheFile, moves, widthCap);
+    }
+
+    /**
+     * withWidthCap returns the same settings with another width cap
+     * @param cap the largest number of moves searched at a node (0 for all)
+     * @return the new settings
+     */
+    public SearchConfig withWidthCap(int cap){
+        return new SearchConfig(numThreads, ttSizeBits, profile, statsOut, endgameComponents, endgameFruits, engine, cacheFile, lateMoves, cap);
+    }
+
+    /**
+     * getNumThreads returns the number of search threads
+     * @return the number of search threads
+     */
+    public int getNumThreads(){
+        return numThreads;
+    }
+
+    /**
+     * getTtSizeBits returns the size of the transposition table
+     * @return the base 2 logarithm of the number of entries
+     */
+    public int getTtSizeBits(){
+        return ttSizeBits;
+    }
+
+    /**
+     * getProfile returns the speed profile of the machine
+     * @return the speed profile, or null
+     */
+    public SpeedProfile getProfile(){
+        return profile;
+    }
+
+    /**
+     * getStatsOut returns the stream for the search statistics
+     * @return the stream, or null
+     */
+    public PrintStream getStatsOut(){
+        return statsOut;
+    }
+
+    /**
+     * getEndgameComponents returns the largest number of components solved exactly
+     * @return the number of components (0 for none)
+     */
+    public int getEndgameComponents(){
+        return endgameComponents;
+    }
+
+    /**
+     * getEndgameFruits returns the largest number of fruits solved exactly
+     * @return the number of fruits (0 for none)
+     */
+    public int getEndgameFruits(){
+        return endgameFruits;
+    }
+
+    /**
+     * getEngine returns the engine choosing the moves
+     * @return ENGINE_AUTO, ENGINE_ALPHA_BETA or ENGINE_MCTS
+     */
+    public String getEngine(){
+        return engine;
+    }
+
+    /**
+     * getCacheFile returns the file the transposition table is kept in between runs
+     * @return the name of the cache file, or null for a table on the heap
+     */
+    public String getCacheFile(){
+        return cacheFile;
+    }
+
+    /**
+     * getLateMoves returns the number of moves searched in full before the late ones are reduced
+     * @return the number of moves (0 for no reductions)
+     */
+    public int getLateMoves(){
+        return lateMoves;
+    }
+
+    /**
+     * getWidthCap returns the largest number of moves searched at a node
+     * @return the number of moves (0 for all)
+     */
+    public int getWidthCap(){
+        return widthCap;
+    }
+}
+
+/*******************************************************************************
+ * The SearchResult class is the outcome of one search: the chosen action (its
+ * index in the root actions list, a position in it and the board after playing
+ * it), the value and depth of the last completed iteration, the principal
+ * variation and the statistics of all iterations.
+ *******************************************************************************/
+class SearchResult{
+    private final int bestIndex;
+    private final BoardPosition move;
+    private final Board nextState;
+    private final double value;
+    private final int depth;
+    private final String[] principalVariation;
+    private final SearchStats stats;
+
+    /**
+     * SearchResult constructor
+     * @param bestIndex the index of the chosen action in the root actions list
+     * @param move a position of the chosen component, or null if the game is over
+     * @param nextState the board after the chosen action, or null if the game is over
+     * @param value the value of the last completed iteration (NaN if none completed)
+     * @param depth the depth of the last completed iteration
+     * @param principalVariation the positions of the principal variation
+     * @param stats the statistics of all iterations
+     */
+    public SearchResult(int bestIndex, BoardPosition move, Board nextState, double value, int depth, String[] principalVariation, SearchStats stats){
+        this.bestIndex = bestIndex;
+        this.move = move;
+        this.nextState = nextState;
+        this.value = value;
+        this.depth = depth;
+        this.principalVariation = principalVariation;
+        this.stats = stats;
+    }
+
+    /**
+     * getBestIndex returns the index of the chosen action in the root actions list
+     * @return the index of the chosen action
+     */
+    public int getBestIndex(){
+        return bestIndex;
+    }
+
+    /**
+     * getMove returns a position of the chosen component (the move to print)
+     * @return the position, or null if the game is over
+     */
+    public BoardPosition getMove(){
+        return move;
+    }
+
+    /**
+     * getNextState returns the board after the chosen action
+     * @return the board, or null if the game is over
+     */
+    public Board getNextState(){
+        return nextState;
+    }
+
+    /**
+     * getValue returns the value of the last completed iteration
+     * @return the value, or NaN if no iteration completed
+     */
+    public double getValue(){
+        return value;
+    }
+
+    /**
+     * getDepth returns the depth of the last completed iteration
+     * @return the depth
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * getPrincipalVariation returns the moves expected from the root, one position (the
+     * top-left cell of the component) per ply. It stops early where the rest of the line
+     * came from the transposition table
+     * @return the positions of the principal variation
+     */
+    public String[] getPrincipalVariation(){
+        return principalVariation;
+    }
+
+    /**
+     * getStats returns the statistics of all iterations
+     * @return the search statistics
+     */
+    public SearchStats getStats(){
+        return stats;
+    }
+}
+
+/*******************************************************************************
+ * The SearchEngine class chooses moves. It owns all the state of its searches
+ * (transposition table, workers and their thread pool), so any number of engines
+ * can search at once in one virtual machine; the searches of one engine run one
+ * at a time. An engine keeps its table between searches, so it is best kept for
+ * a whole game, and must be closed to stop its threads.
+ *******************************************************************************/
+class SearchEngine{
+    private static final int INFINITY = SearchWorker.INFINITY;
+    private static final int NEG_INFINITY = SearchWorker.NEG_INFINITY;
+    private static final double SEC_TO_MS = 1000;
+    private static final double NANOS_PER_MS = 1e6;
+    //Aspiration window around the previous iteration's value, how fast it widens on a failed search, and its limit
+    private static final int ASPIRATION_WINDOW = 32;
+    private static final int ASPIRATION_GROWTH = 4;
+    private static final int MAX_ASPIRATION_WINDOW = 1024;
+    //Boards on which "auto" chooses Monte-Carlo tree search: at least this size and
+    //this many root actions, and a time limit (the playouts without one)
+    private static final int MCTS_MIN_BOARD_SIZE = 20;
+    private static final int MCTS_MIN_BRANCHING = 100;
+    private static final long MCTS_MAX_PLAYOUTS = 100000;
+    //Number of opponent replies searched while pondering
+    private static final int PONDER_REPLIES = 3;
+    private final SearchConfig config;
+    //Transposition table shared by all iterations of the iterative deepening search, and by all workers
+    private final TranspositionTable transpositionTable;
+    private final AtomicBoolean stopFlag;
+    private final SearchWorker[] workers;
+    private final ForkJoinPool pool;
+    //Exact solver of sparse positions, and the Monte-Carlo searcher of each thread (created when first needed)
+    private EndgameSolver endgameSolver;
+    private MctsSearcher[] mctsSearchers;
+    //Principal variation of the last search, the anchor cells of its moves
+    private int[] lastPrincipalVariation;
+    //Pondering thread and its deadline (expired to stop it), and for each pondered reply the
+    //key of the position after it, the depth completed and the value and best index found there
+    private final Object ponderLock;
+    private Thread ponderThread;
+    private Deadline ponderDeadline;
+    private final long[] ponderKeys;
+    private final int[] ponderDepths;
+    private final int[] ponderValues;
+    private final int[] ponderBest;
+    private int ponderCount;
+
+    /**
+     * SearchEngine constructor
+     * @param config the settings of the engine
+     */
+    public SearchEngine(SearchConfig config){
+        this.config = config;
+        this.transpositionTable = (config.getCacheFile() == null) ? new TranspositionTable(config.getTtSizeBits())
+                : TranspositionTable.open(config.getCacheFile(), config.getTtSizeBits());
+        this.stopFlag = new AtomicBoolean();
+        this.workers = new SearchWorker[config.getNumThreads()];
+        for(int k = 0; k < workers.length; k++){
+            workers[k] = new SearchWorker(k, transpositionTable, stopFlag);
+            workers[k].setSelectivity(config.getLateMoves(), config.getWidthCap());
+        }
+        //The main worker searches in the calling thread, the helpers on the pool (none for one worker)
+        this.pool = (workers.length > 1) ? new ForkJoinPool(workers.length - 1) : null;
+        this.lastPrincipalVariation = new int[0];
+        this.ponderLock = new Object();
+        this.ponderKeys = new long[PONDER_REPLIES];
+        this.ponderDepths = new int[PONDER_REPLIES];
+        this.ponderValues = new int[PONDER_REPLIES];
+        this.ponderBest = new int[PONDER_REPLIES];
+        this.ponderCount = 0;
+    }
+
+    /**
+     * search chooses the move of MAX on a board, with the time allocated from the
+     * remaining time of the game
+     * @param board the board
+     * @param remainingTime the remaining time of the game in seconds
+     * @param startNanos the System.nanoTime from which the time of the move is counted
+     * @return the result of the search
+     */
+    public SearchResult search(Board board, double remainingTime, long startNanos){
+        //The workers are needed here: stop thinking on the opponent's time
+        stopPondering();
+        synchronized(this){
+            return searchPosition(board, remainingTime, startNanos);
+        }
+    }
+
+    /**
+     * analyse searches a position to a fixed depth or for a fixed time, as if from an empty
+     * table (the engine's searches are isolated from then on), so that the result does not
+     * depend on the positions analysed before it
+     * @param board the board, MAX to move
+     * @param maxDepth the depth to search to (0 for no limit)
+     * @param millis the time of the search in milliseconds (0 for no limit)
+     * @return the result of the search
+     */
+    public SearchResult analyse(Board board, int maxDepth, double millis){
+        stopPondering();
+        synchronized(this){
+            long startNanos = System.nanoTime();
+            transpositionTable.isolateSearches();
+            Node newNode = new Node(board, 0, 0, 0, "MAX");
+            int depthCap = board.countFruits();
+            if(maxDepth > 0){
+                depthCap = Math.min(depthCap, maxDepth);
+            }
+            Deadline deadline = (millis > 0) ? Deadline.afterMillis(startNanos, millis) : Deadline.none();
+            return iterativeDeepening(newNode, depthCap, deadline, 0, NEG_INFINITY, 0);
+        }
+    }
+
+    //Search of a position, once the engine is not pondering
+    private SearchResult searchPosition(Board board, double remainingTime, long startNanos){
+        int boardSize = board.getSize();
+        //Count the fruits of each type and the empty cells
+        int[] fruitNumArray = new int[10];
+        int numEmpty = 0;
+        for(int i = 0; i < boardSize; i++){
+            for(int j = 0; j < boardSize; j++){
+                if(board.get(i, j) == Board.EMPTY_CELL){
+                    numEmpty++;
+                }
+                else{
+                    fruitNumArray[board.get(i, j)]++;
+                }
+            }
+        }
+        //Generate root node, set to MAX
+        Node newNode = new Node(board, 0, 0, 0, "MAX");
+        //Time allocation calculations
+        double allocatedTime = homework.timeAllocation(fruitNumArray, boardSize, remainingTime, numEmpty, newNode.getNumChildren(), config.getProfile()) * SEC_TO_MS;
+        //Calculate the time limit of the search
+        Deadline deadline = Deadline.afterMillis(startNanos, allocatedTime);
+        //If this position was pondered, resume after the depths already searched (matching
+        //the board key itself: the best index found is only valid in the same orientation)
+        for(int r = 0; r < ponderCount; r++){
+            if(ponderKeys[r] == board.getHashKey() && ponderDepths[r] > 0){
+                return iterativeDeepening(newNode, boardSize * boardSize - numEmpty, deadline, ponderDepths[r], ponderValues[r], ponderBest[r]);
+            }
+        }
+        return iterativeDeepening(newNode, boardSize * boardSize - numEmpty, deadline, 0, NEG_INFINITY, 0);
+    }
+
+    /**
+     * iterativeDeepening searches the root one depth more at a time until the time is up
+     * or the scheduler declines the next depth
+     * @param newNode the root node
+     * @param depthCap the largest useful depth (the number of fruits on the board)
+     * @param deadline the time limit
+     * @param startDepth the depth already searched (while pondering), 0 if none
+     * @param startResult the value found at the depth already searched (NEG_INFINITY if none)
+     * @param startBest the best index found at the depth already searched
+     * @return the result of the search
+     */
+    private SearchResult iterativeDeepening(Node newNode, int depthCap, Deadline deadline, int startDepth, int startResult, int startBest){
+        //Entries from an earlier search are the first to be replaced
+        transpositionTable.startSearch();
+        try{
+            return deepen(newNode, depthCap, deadline, startDepth, startResult, startBest);
+        }
+        finally{
+            transpositionTable.endSearch();
+        }
+    }
+
+    //Body of iterativeDeepening, between the start and the end of the search on the table
+    private SearchResult deepen(Node newNode, int depthCap, Deadline deadline, int startDepth, int startResult, int startBest){
+        SearchStats[] workerStats = new SearchStats[workers.length];
+        for(int k = 0; k < workers.length; k++){
+            workers[k].newGame();
+            workerStats[k] = workers[k].getStats();
+        }
+        SearchStats totalStats = new SearchStats();
+        long previousNodes = 0;
+        //Set initial maximum depth to 0 (or the depth pondered)
+        int maxDepth = startDepth;
+        int bestIndex = startBest;
+        //Previous best index, and the value the next iteration's window is centred on
+        int previousBest = startBest;
+        int previousResult = startResult;
+        int[] principalVariation = new int[0];
+        //Decides whether each iteration is worth starting, deepening at most once per fruit on the board
+        IterationScheduler scheduler = new IterationScheduler(depthCap);
+        //Sparse positions are solved to the end of the game instead of deepened, unless the
+        //depth is capped below the end of the game (a batch depth limit)
+        int numFruits = newNode.getState().countFruits();
+        if(newNode.getActionsList().size() > 1 && numFruits <= depthCap && EndgameSolver.applies(newNode.getNumChildren(), numFruits, config.getEndgameComponents(), config.getEndgameFruits())){
+            SearchResult solved = solveEndgame(newNode, deadline);
+            if(solved != null){
+                return solved;
+            }
+        }
+        //Boards too wide for alpha-beta are searched by Monte-Carlo tree search
+        if(newNode.getActionsList().size() > 1 && useMonteCarlo(newNode, deadline)){
+            return monteCarlo(newNode, deadline);
+        }
+        //If only one action possible (or none), return that action
+        if(newNode.getActionsList().size() > 1){
+            /***********************ITERATIVE DEEPENING***********************/
+            while(scheduler.shouldStart(maxDepth + 1, deadline.remainingNanos())){
+                //check if time allocated is over
+                if(deadline.reached()){
+                    break;
+                }
+                //Increment the maximum depth
+                maxDepth++;
+                //Apply Alpha-Beta Prunning to the node, get index of best action
+                for(SearchStats stats : workerStats){
+                    stats.reset();
+                }
+                long iterationStart = System.nanoTime();
+                boolean completed = true;
+                int alphaBetaResult = NEG_INFINITY;
+                try{
+                    alphaBetaResult = aspirationSearch(newNode, previousResult, maxDepth, deadline);
+                }
+                catch(SearchAbortedException ex){
+                    completed = false;
+                }
+                long iterationNanos = System.nanoTime() - iterationStart;
+                //Record the iteration
+                SearchStats iterationStats = new SearchStats();
+                for(SearchStats stats : workerStats){
+                    iterationStats.add(stats);
+                }
+                totalStats.add(iterationStats);
+                boolean hasMove = completed || workers[0].hasRootMove();
+                if(config.getStatsOut() != null){
+                    String iterationMove = hasMove ? newNode.getComponent(workers[0].getBestIndex()).getBoardPosition(0).toString() : null;
+                    double branchingFactor = (previousNodes > 0) ? (double)iterationStats.getNodes() / previousNodes : iterationStats.getNodes();
+                    config.getStatsOut().println(iterationStats.toJson(maxDepth, completed, alphaBetaResult, iterationMove, iterationNanos, branchingFactor, workerStats));
+                }
+                previousNodes = iterationStats.getNodes();
+                //If out of time, return the best index of the previous iteration, unless the
+                //unfinished one has already found a root move better than it (searched first)
+                if(!completed){
+                    bestIndex = hasMove ? workers[0].getBestIndex() : previousBest;
+                    maxDepth--;
+                    break;
+                }
+                //Store the value of the best index in current iteration
+                scheduler.record(iterationStats.getNodes(), iterationNanos, workers[0].getStats().reachedGameEnd());
+                bestIndex = workers[0].getBestIndex();
+                previousBest = bestIndex;
+                previousResult = alphaBetaResult;
+                principalVariation = workers[0].getPrincipalVariation();
+            }
+        }
+        lastPrincipalVariation = principalVariation;
+        if(newNode.getActionsList().isEmpty()){
+            return new SearchResult(bestIndex, null, null, Double.NaN, 0, new String[0], totalStats);
+        }
+        //Generate node with given result index
+        Node bestNode = homework.generateNewNode(newNode, bestIndex);
+        //Get Board Position within selected Connected Component of best action (first element, for example)
+        BoardPosition selectedBP = newNode.getComponent(bestIndex).getBoardPosition(0);
+        double value = (previousResult == NEG_INFINITY) ? Double.NaN : previousResult;
+        return new SearchResult(bestIndex, selectedBP, bestNode.getState(), value, maxDepth, toPositions(principalVariation, newNode.getState().getSize()), totalStats);
+    }
+
+    /**
+     * solveEndgame plays out a sparse position exactly, in at most half of the time left
+     * (the rest is for the normal search if it is not solved in time)
+     * @param newNode the root node
+     * @param deadline the time limit
+     * @return the result of perfect play, or null if the position was not solved in time
+     */
+    private SearchResult solveEndgame(Node newNode, Deadline deadline){
+        if(endgameSolver == null){
+            endgameSolver = new EndgameSolver(EndgameSolver.DEFAULT_SIZE_BITS);
+        }
+        SearchStats stats = new SearchStats();
+        long startNanos = System.nanoTime();
+        long startBytes = SearchStats.allocatedBytes();
+        long remainingNanos = deadline.remainingNanos();
+        Deadline solveDeadline = (remainingNanos == Long.MAX_VALUE) ? deadline : Deadline.afterMillis(startNanos, remainingNanos / 2 / NANOS_PER_MS);
+        boolean solved = true;
+        int value = 0;
+        try{
+            value = endgameSolver.solve(newNode.getState(), solveDeadline, stats);
+        }
+        catch(SearchAbortedException ex){
+            solved = false;
+        }
+        long solveNanos = System.nanoTime() - startNanos;
+        stats.countSearch(solveNanos, SearchStats.allocatedBytes() - startBytes);
+        int bestIndex = endgameSolver.getBestIndex();
+        BoardPosition selectedBP = newNode.getComponent(bestIndex).getBoardPosition(0);
+        if(config.getStatsOut() != null){
+            config.getStatsOut().println(stats.toJson(endgameSolver.getDepth(), solved, value, solved ? selectedBP.toString() : null, solveNanos, 0, new SearchStats[]{stats}));
+        }
+        if(!solved){
+            return null;
+        }
+        lastPrincipalVariation = endgameSolver.getPrincipalVariation();
+        Node bestNode = homework.generateNewNode(newNode, bestIndex);
+        //The solver's value is what the player to move (MAX) still scores more than MIN
+        int totalValue = value + newNode.getMaxValue() - newNode.getMinValue();
+        return new SearchResult(bestIndex, selectedBP, bestNode.getState(), totalValue, endgameSolver.getDepth(), toPositions(lastPrincipalVariation, newNode.getState().getSize()), stats);
+    }
+
+    //Tells if the configured engine (or the board, for "auto") calls for Monte-Carlo tree search
+    private boolean useMonteCarlo(Node newNode, Deadline deadline){
+        if(config.getEngine().contentEquals(SearchConfig.ENGINE_MCTS)){
+            return true;
+        }
+        if(config.getEngine().contentEquals(SearchConfig.ENGINE_ALPHA_BETA)){
+            return false;
+        }
+        return deadline.remainingNanos() != Long.MAX_VALUE && newNode.getState().getSize() >= MCTS_MIN_BOARD_SIZE && newNode.getNumChildren() >= MCTS_MIN_BRANCHING;
+    }
+
+    /**
+     * monteCarlo chooses the move by Monte-Carlo tree search, one tree per thread, playing
+     * the action the playouts of all the trees visited most
+     * @param newNode the root node
+     * @param deadline the time limit (without one, a fixed number of playouts is shared by the threads)
+     * @return the result of the search: its value is the average final margin of the playouts of
+     * the chosen action, its depth the depth of the deepest tree
+     */
+    private SearchResult monteCarlo(Node newNode, Deadline deadline){
+        if(mctsSearchers == null){
+            mctsSearchers = new MctsSearcher[workers.length];
+            for(int k = 0; k < workers.length; k++){
+                mctsSearchers[k] = new MctsSearcher(k);
+            }
+        }
+        long startNanos = System.nanoTime();
+        long playouts = (deadline.remainingNanos() == Long.MAX_VALUE) ? MCTS_MAX_PLAYOUTS / mctsSearchers.length : Long.MAX_VALUE;
+        int rootMargin = newNode.getMaxValue() - newNode.getMinValue();
+        SearchStats[] searcherStats = new SearchStats[mctsSearchers.length];
+        for(int k = 0; k < mctsSearchers.length; k++){
+            searcherStats[k] = mctsSearchers[k].getStats();
+            searcherStats[k].reset();
+        }
+        ArrayList<ForkJoinTask<?>> helpers = new ArrayList<>();
+        for(int k = 1; k < mctsSearchers.length; k++){
+            MctsSearcher helper = mctsSearchers[k];
+            helpers.add(pool.submit(() -> helper.search(newNode.getState(), rootMargin, deadline, playouts)));
+        }
+        try{
+            mctsSearchers[0].search(newNode.getState(), rootMargin, deadline, playouts);
+        }
+        finally{
+            for(ForkJoinTask<?> helper : helpers){
+                helper.join();
+            }
+        }
+        long searchNanos = System.nanoTime() - startNanos;
+        //Add up the visits and margins of the root actions of all the trees
+        int numActions = newNode.getNumChildren();
+        long[] visits = new long[numActions];
+        long[] margins = new long[numActions];
+        int maxTreeDepth = 0;
+        SearchStats totalStats = new SearchStats();
+        for(MctsSearcher searcher : mctsSearchers){
+            MctsNode root = searcher.getRoot();
+            for(int i = 0; i < root.getNumChildren(); i++){
+                MctsNode child = root.getChild(i);
+                visits[child.getActionIndex()] += child.getVisits();
+                margins[child.getActionIndex()] += child.getMarginSum();
+            }
+            maxTreeDepth = Math.max(maxTreeDepth, searcher.getMaxTreeDepth());
+            totalStats.add(searcher.getStats());
+        }
+        int bestIndex = 0;
+        for(int i = 1; i < numActions; i++){
+            if(visits[i] > visits[bestIndex]){
+                bestIndex = i;
+            }
+        }
+        double value = (visits[bestIndex] > 0) ? rootMargin + (double)margins[bestIndex] / visits[bestIndex] : Double.NaN;
+        BoardPosition selectedBP = newNode.getComponent(bestIndex).getBoardPosition(0);
+        if(config.getStatsOut() != null){
+            config.getStatsOut().println(totalStats.toJson(maxTreeDepth, true, value, selectedBP.toString(), searchNanos, 0, searcherStats));
+        }
+        //Principal variation: the chosen action, then the most visited children of the main tree
+        int[] principalVariation = new int[maxTreeDepth + 1];
+        int length = 0;
+        principalVariation[length++] = newNode.getActionsList().getAnchor(bestIndex);
+        MctsNode root = mctsSearchers[0].getRoot();
+        MctsNode node = (bestIndex < root.getNumChildren()) ? root.getChild(bestIndex) : null;
+        while(node != null && node.getNumChildren() > 0){
+            MctsNode mostVisited = node.getChild(0);
+            for(int i = 1; i < node.getNumChildren(); i++){
+                if(node.getChild(i).getVisits() > mostVisited.getVisits()){
+                    mostVisited = node.getChild(i);
+                }
+            }
+            principalVariation[length++] = mostVisited.getAnchor();
+            node = mostVisited;
+        }
+        lastPrincipalVariation = Arrays.copyOf(principalVariation, length);
+        Node bestNode = homework.generateNewNode(newNode, bestIndex);
+        return new SearchResult(bestIndex, selectedBP, bestNode.getState(), value, maxTreeDepth, toPositions(lastPrincipalVariation, newNode.getState().getSize()), totalStats);
+    }
+
+    //Positions of the anchor cells (row-major indices) of a principal variation
+    private static String[] toPositions(int[] anchors, int boardSize){
+        String[] positions = new String[anchors.length];
+        for(int i = 0; i < anchors.length; i++){
+            positions[i] = new BoardPosition(0, anchors[i] / boardSize, anchors[i] % boardSize).toString();
+        }
+        return positions;
+    }
+
+    /**
+     * parallelAlphaBeta runs the alpha-beta search on all workers at once. The main worker
+     * (worker 0) searches in the calling thread, the helpers run on the pool. Once the main
+     * worker is done the helpers are stopped, and its result is returned
+     * @param root the root node
+     * @param alpha the value of alpha
+     * @param beta the value of beta
+     * @param maxDepth the maximum depth of search
+     * @param deadline the time limit
+     * @return the alpha beta value of the main worker
+     * @throws SearchAbortedException if the main worker ran out of time
+     */
+    private int parallelAlphaBeta(Node root, int alpha, int beta, int maxDepth, Deadline deadline){
+        stopFlag.set(false);
+        ArrayList<ForkJoinTask<?>> helpers = new ArrayList<>();
+        for(int k = 1; k < workers.length; k++){
+            SearchWorker helper = workers[k];
+            //Odd helpers search one ply deeper, filling the table ahead of the main worker
+            int helperDepth = maxDepth + (k % 2);
+            helpers.add(pool.submit(() -> {
+                try{
+                    helper.alphaBeta(root, alpha, beta, helperDepth, deadline);
+                }
+                catch(SearchAbortedException ex){
+                    //Stopped: a helper's result is only what it left in the table
+                }
+            }));
+        }
+        try{
+            return workers[0].alphaBeta(root, alpha, beta, maxDepth, deadline);
+        }
+        finally{
+            //The main worker is done (or aborted): stop the helpers and wait for them to unwind
+            stopFlag.set(true);
+            for(ForkJoinTask<?> helper : helpers){
+                helper.join();
+            }
+        }
+    }
+    
+    /**
+     * aspirationSearch runs one iteration of the iterative deepening in a narrow window
+     * around the value of the previous iteration. If the value falls outside the window,
+     * the side that failed is widened and the iteration is searched again
+     * @param root the root node
+     * @param previousResult the value of the previous iteration (NEG_INFINITY if there is none)
+     * @param maxDepth the maximum depth of search
+     * @param deadline the time limit
+     * @return the alpha beta value of the main worker
+     * @throws SearchAbortedException if the main worker ran out of time
+     */
+    private int aspirationSearch(Node root, int previousResult, int maxDepth, Deadline deadline){
+        //Without a previous value, search the full window
+        if(previousResult == NEG_INFINITY){
+            return parallelAlphaBeta(root, NEG_INFINITY, INFINITY, maxDepth, deadline);
+        }
+        int alphaDelta = ASPIRATION_WINDOW;
+        int betaDelta = ASPIRATION_WINDOW;
+        while(true){
+            //Windows wider than the limit are opened all the way
+            int alpha = (alphaDelta > MAX_ASPIRATION_WINDOW) ? NEG_INFINITY : previousResult - alphaDelta;
+            int beta = (betaDelta > MAX_ASPIRATION_WINDOW) ? INFINITY : previousResult + betaDelta;
+            int result = parallelAlphaBeta(root, alpha, beta, maxDepth, deadline);
+            //Fail low: the value is at most alpha, search again with a lower alpha
+            if(result <= alpha && alpha != NEG_INFINITY){
+                alphaDelta *= ASPIRATION_GROWTH;
+            }
+            //Fail high: the value is at least beta, search again with a higher beta
+            else if(result >= beta && beta != INFINITY){
+                betaDelta *= ASPIRATION_GROWTH;
+            }
+            else{
+                return result;
+            }
+        }
+    }
+    
+    /**
+     * startPondering searches, on the opponent's time, the positions after the likely
+     * replies to the move just played: the reply of the principal variation, then the
+     * largest components. The replies are deepened in turns until the next search stops
+     * them; the table keeps their results, and a search of one of these positions resumes
+     * after the depth pondered
+     * @param result the result of the last search (the move just played)
+     */
+    public void startPondering(SearchResult result){
+        stopPondering();
+        synchronized(this){
+            preparePondering(result);
+        }
+    }
+
+    //Chooses the replies to ponder and starts the pondering thread on them
+    private void preparePondering(SearchResult result){
+        ponderCount = 0;
+        if(result.getNextState() == null){
+            return;
+        }
+        //The position after our move, with the opponent to move
+        Node opponentNode = new Node(result.getNextState(), 0, 0, 0, "MIN");
+        ActionList replies = opponentNode.getActionsList();
+        if(replies.isEmpty()){
+            return;
+        }
+        //Likely replies: the one of the principal variation first, then by size
+        int[] replyIndices = new int[Math.min(PONDER_REPLIES, replies.size())];
+        int numReplies = 0;
+        if(lastPrincipalVariation.length > 1){
+            for(int i = 0; i < replies.size(); i++){
+                if(replies.getAnchor(i) == lastPrincipalVariation[1]){
+                    replyIndices[numReplies++] = i;
+                    break;
+                }
+            }
+        }
+        for(int i = 0; i < replies.size() && numReplies < replyIndices.length; i++){
+            if(numReplies == 0 || replyIndices[0] != i){
+                replyIndices[numReplies++] = i;
+            }
+        }
+        //Our positions after each reply, searched as roots
+        Node[] roots = new Node[numReplies];
+        int[] depthCaps = new int[numReplies];
+        for(int r = 0; r < numReplies; r++){
+            Board replyState = homework.generateNewNode(opponentNode, replyIndices[r]).getState();
+            roots[r] = new Node(replyState, 0, 0, 0, "MAX");
+            depthCaps[r] = replyState.countFruits();
+            ponderKeys[r] = replyState.getHashKey();
+            ponderDepths[r] = 0;
+            ponderValues[r] = NEG_INFINITY;
+            ponderBest[r] = 0;
+        }
+        ponderCount = numReplies;
+        Deadline deadline = Deadline.none();
+        Thread thread = new Thread(() -> ponder(roots, depthCaps, deadline));
+        thread.setDaemon(true);
+        synchronized(ponderLock){
+            ponderDeadline = deadline;
+            ponderThread = thread;
+        }
+        thread.start();
+    }
+
+    /**
+     * ponder deepens the roots in turns (one depth each) until stopped
+     * @param roots the positions after the likely replies
+     * @param depthCaps the largest useful depth of each root
+     * @param deadline the deadline that is expired to stop pondering
+     */
+    private void ponder(Node[] roots, int[] depthCaps, Deadline deadline){
+        synchronized(this){
+            transpositionTable.startSearch();
+            try{
+                boolean deepened = true;
+                for(int depth = 1; deepened; depth++){
+                    deepened = false;
+                    for(int r = 0; r < roots.length; r++){
+                        if(depth > depthCaps[r] || roots[r].getNumChildren() < 2){
+                            continue;
+                        }
+                        //Each root has its own principal variation and killers
+                        for(SearchWorker worker : workers){
+                            worker.newGame();
+                        }
+                        int value = aspirationSearch(roots[r], ponderValues[r], depth, deadline);
+                        ponderDepths[r] = depth;
+                        ponderValues[r] = value;
+                        ponderBest[r] = workers[0].getBestIndex();
+                        deepened = true;
+                    }
+                }
+            }
+            catch(SearchAbortedException ex){
+                //Stopped by the next search
+            }
+            finally{
+                transpositionTable.endSearch();
+            }
+        }
+    }
+
+    /**
+     * stopPondering stops the pondering thread (if any) and waits for it to finish
+     */
+    public void stopPondering(){
+        Thread thread;
+        synchronized(ponderLock){
+            thread = ponderThread;
+            ponderThread = null;
+            if(thread != null){
+                ponderDeadline.expire();
+            }
+        }
+        if(thread != null){
+            try{
+                thread.join();
+            }
+            catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * close stops the threads of the engine
+     */
+    public void close(){
+        stopPondering();
+        if(pool != null){
+            pool.shutdown();
+        }
+    }
+}
+
+/*******************************************************************************
+ * The MoveRequest class is one position to play: the board and the remaining
+ * time, read in the input format (board size, fruit types, remaining time in
+ * seconds, then one row per line with * for empty cells).
+ *******************************************************************************/
+class MoveRequest{
+    private static final int MAX_BOARD_SIZE = 26;
+    private static final int MAX_FRUIT_TYPE = 9;
+    private final Board board;
+    private final int fruitTypes;
+    private final double remainingTime;
+
+    /**
+     * MoveRequest constructor
+     * @param board the board
+     * @param fruitTypes the number of fruit types
+     * @param remainingTime the remaining time of the game in seconds
+     */
+    public MoveRequest(Board board, int fruitTypes, double remainingTime){
+        this.board = board;
+        this.fruitTypes = fruitTypes;
+        this.remainingTime = remainingTime;
+    }
+
+    /**
+     * read reads the next position
+     * @param in the scanner positioned at the start of a position
+     * @return the position, or null at the end of the input (or any line that is not a board
+     * size, or a position that is cut short or malformed)
+     */
+    public static MoveRequest read(Scanner in){
+        if(!in.hasNextInt()){
+            return null;
+        }
+        try{
+            return readPosition(in);
+        }
+        catch(NoSuchElementException | IndexOutOfBoundsException | IllegalArgumentException ex){
+            Logger.getLogger(MoveRequest.class.getName()).log(Level.WARNING, "Invalid position: {0}", ex.toString());
+            return null;
+        }
+    }
+
+    //Reads a position whose first line is the board size
+    private static MoveRequest readPosition(Scanner in){
+        //Read first line (width and height) of the of the square board (<= 26)
+        int boardSize = in.nextInt();
+        if(boardSize < 1 || boardSize > MAX_BOARD_SIZE){
+            throw new IllegalArgumentException("board size " + boardSize);
+        }
+        //Read the second line of the board, the number of fruit types (<=9)
+        int fruitTypes = in.nextInt();
+        //Read the third line of the board, the remaining time in seconds
+        double remainingTime = in.nextDouble();
+        //Consume line to start looping through array
+        in.nextLine();
+        //Instantiate a new board to store board configuration
+        Board board = new Board(boardSize);
+        //Read file into board array
+        for(int i = 0; i < boardSize; i++){
+            //Read line by line and store data in array
+            String nextRow = in.nextLine();
+            //Read each column value, convert character to int
+            for(int j = 0; j < boardSize; j++){
+                if(nextRow.charAt(j) == '*'){
+                    board.set(i, j, Board.EMPTY_CELL);
+                }
+                else{
+                    int fruitType = Character.getNumericValue(nextRow.charAt(j));
+                    if(fruitType < 0 || fruitType > MAX_FRUIT_TYPE){
+                        throw new IllegalArgumentException("cell '" + nextRow.charAt(j) + "'");
+                    }
+                    board.set(i, j, fruitType);
+                }
+            }
+        }
+        return new MoveRequest(board, fruitTypes, remainingTime);
+    }
+
+    /**
+     * getBoard returns the board
+     * @return the board
+     */
+    public Board getBoard(){
+        return board;
+    }
+
+    /**
+     * getFruitTypes returns the number of fruit types
+     * @return the number of fruit types
+     */
+    public int getFruitTypes(){
+        return fruitTypes;
+    }
+
+    /**
+     * getRemainingTime returns the remaining time of the game
+     * @return the remaining time in seconds
+     */
+    public double getRemainingTime(){
+        return remainingTime;
+    }
+}
+
+/*******************************************************************************
+ * The EngineDaemon class keeps the engine running between moves, so that the
+ * compiled code and the transposition table stay warm instead of every move
+ * paying for a virtual machine start and a cold search. It reads positions in
+ * the input format and answers each one with the output format (the move, then
+ * the board after it), either on standard input and output or on a local socket
+ * (one engine per connection, so several games can be played at once). The
+ * client mode is a stand-in for the game: it sends input.txt to the daemon and
+ * writes its answer to output.txt.
+ *******************************************************************************/
+class EngineDaemon{
+    //Seeded board and remaining time (seconds) of the search that warms up the engine
+    private static final int WARMUP_BOARD_SIZE = 10;
+    private static final int WARMUP_FRUITS = 4;
+    private static final double WARMUP_TIME = 5;
+    private final SearchConfig config;
+    private final boolean ponder;
+
+    /**
+     * EngineDaemon constructor
+     * @param config the settings of the engines
+     * @param ponder true to keep searching on the opponent's time after each answer
+     */
+    public EngineDaemon(SearchConfig config, boolean ponder){
+        this.config = config;
+        this.ponder = ponder;
+    }
+
+    /**
+     * serve answers the positions of one stream until it ends, with one engine
+     * @param input the stream of positions
+     * @param output the stream of answers
+     */
+    public void serve(InputStream input, OutputStream output){
+        SearchEngine engine = new SearchEngine(config);
+        try{
+            PrintStream out = new PrintStream(output, false);
+            Scanner in = new Scanner(input);
+            MoveRequest request;
+            while((request = MoveRequest.read(in)) != null){
+                //The time of the move is counted from when the position has been read
+                long startNanos = System.nanoTime();
+                SearchResult result = engine.search(request.getBoard(), request.getRemainingTime(), startNanos);
+                //A finished game has no move: the answer is an empty move and the board as it is
+                if(result.getMove() == null){
+                    homework.printMove(out, "", request.getBoard());
+                }
+                else{
+                    homework.printMove(out, result.getMove().toString(), result.getNextState());
+                }
+                out.flush();
+                //Think about the likely replies while waiting for the next position
+                if(ponder){
+                    engine.startPondering(result);
+                }
+            }
+        }
+        finally{
+            engine.close();
+        }
+    }
+
+    /**
+     * serveSocket accepts connections on a local port, answering each on its own thread
+     * @param port the port to listen on (loopback address only)
+     */
+    public void serveSocket(int port){
+        try(ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())){
+            while(true){
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> {
+                    try(Socket client = socket){
+                        serve(client.getInputStream(), client.getOutputStream());
+                    }
+                    catch(IOException ex){
+                        Logger.getLogger(EngineDaemon.class.getName()).log(Level.WARNING, null, ex);
+                    }
+                });
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+        catch(IOException ex){
+            Logger.getLogger(EngineDaemon.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * warmUp runs a short search, so that the first real move finds compiled code
+     */
+    public void warmUp(){
+        SearchEngine engine = new SearchEngine(config.withThreads(config.getNumThreads(), null));
+        engine.search(SearchBenchmark.seededBoard(WARMUP_BOARD_SIZE, WARMUP_FRUITS), WARMUP_TIME, System.nanoTime());
+        engine.close();
+    }
+
+    /**
+     * runClient sends input.txt to a daemon on a local port, and prints its answer to
+     * the standard output and output.txt, like a normal run
+     * @param port the port of the daemon
+     */
+    public static void runClient(int port){
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)){
+            Scanner file = new Scanner(new File("input.txt"));
+            MoveRequest request = MoveRequest.read(file);
+            file.close();
+            if(request == null){
+                Logger.getLogger(EngineDaemon.class.getName()).log(Level.SEVERE, "input.txt does not hold a valid position");
+                return;
+            }
+            PrintStream out = new PrintStream(socket.getOutputStream(), false);
+            Board board = request.getBoard();
+            out.println(board.getSize());
+            out.println(request.getFruitTypes());
+            out.println(request.getRemainingTime());
+            for(int i = 0; i < board.getSize(); i++){
+                out.println(board.rowToString(i));
+            }
+            out.flush();
+            //The answer is the move, then one line per row
+            Scanner in = new Scanner(socket.getInputStream());
+            Board newBoard = new Board(board.getSize());
+            String[] rows = new String[board.getSize() + 1];
+            for(int i = 0; i < rows.length; i++){
+                if(!in.hasNextLine()){
+                    Logger.getLogger(EngineDaemon.class.getName()).log(Level.SEVERE, "The daemon closed the connection without a complete answer");
+                    return;
+                }
+                rows[i] = in.nextLine();
+            }
+            String move = rows[0];
+            for(int i = 0; i < board.getSize(); i++){
+                String row = rows[i + 1];
+                for(int j = 0; j < board.getSize(); j++){
+                    newBoard.set(i, j, (row.charAt(j) == '*') ? Board.EMPTY_CELL : Character.getNumericValue(row.charAt(j)));
+                }
+            }
+            homework.printOutput(move, newBoard);
+            homework.printOutFile(move, newBoard);
+        }
+        catch(IOException ex){
+            Logger.getLogger(EngineDaemon.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+}
+
+/*******************************************************************************
+ * The BatchJob class is one position of a batch analysis, with where it was read
+ * from.
+ *******************************************************************************/
+class BatchJob{
+    //Marks the end of the positions for the analysis threads
+    public static final BatchJob END = new BatchJob(null, 0, null);
+    private final String source;
+    private final int index;
+    private final MoveRequest request;
+
+    /**
+     * BatchJob constructor
+     * @param source the name of the file (or stream) the position was read from
+     * @param index the index of the position within its source
+     * @param request the position
+     */
+    public BatchJob(String source, int index, MoveRequest request){
+        this.source = source;
+        this.index = index;
+        this.request = request;
+    }
+
+    /**
+     * getId returns the name of the position: its source and its index within it
+     * @return the name of the position
+     */
+    public String getId(){
+        return source + "#" + index;
+    }
+
+    /**
+     * getRequest returns the position
+     * @return the position
+     */
+    public MoveRequest getRequest(){
+        return request;
+    }
+}
+
+/*******************************************************************************
+ * The BatchAnalyzer class analyses a corpus of logged positions in the input
+ * format (a directory of files, or one file or stream of positions one after the
+ * other) on all cores. One thread reads the positions into a bounded queue and
+ * each analysis thread owns a single-threaded engine (a small table and no
+ * thread pool), so memory use does not grow with the corpus. Each position gets one line of results (move, score,
+ * depth, nodes, time), written as soon as it is analysed, in JSONL or CSV.
+ *******************************************************************************/
+class BatchAnalyzer{
+    //Positions waiting in the queue per analysis thread
+    private static final int QUEUE_PER_THREAD = 2;
+    private static final double NANOS_PER_MS = 1e6;
+    //Time of each analysis in milliseconds when neither a depth nor a time is given
+    //(without either, a search from a full board would not end)
+    public static final double DEFAULT_MOVE_TIME = 1000;
+    //Transposition table of each analysis thread: positions are analysed one at a time, and
+    //a small table is cheap to set up for the short analyses of a large corpus
+    private static final int WORKER_TT_SIZE_BITS = 16;
+    private final SearchConfig config;
+    private final int maxDepth;
+    private final double moveTime;
+    private final boolean csv;
+
+    /**
+     * BatchAnalyzer constructor
+     * @param config the settings of the engines (one analysis thread per search thread)
+     * @param maxDepth the depth of each analysis (0 for no limit)
+     * @param moveTime the time of each analysis in milliseconds (0 for no limit, or
+     * DEFAULT_MOVE_TIME if there is no depth limit either)
+     * @param csv true to write CSV lines, false for JSON lines
+     */
+    public BatchAnalyzer(SearchConfig config, int maxDepth, double moveTime, boolean csv){
+        this.config = config;
+        this.maxDepth = maxDepth;
+        this.moveTime = (maxDepth <= 0 && moveTime <= 0) ? DEFAULT_MOVE_TIME : moveTime;
+        this.csv = csv;
+    }
+
+    /**
+     * run analyses all the positions of a directory, a file, or the standard input ("-")
+     * @param path the corpus
+     * @param out the stream of results
+     */
+    public void run(String path, PrintStream out){
+        int numThreads = config.getNumThreads();
+        BlockingQueue<BatchJob> queue = new ArrayBlockingQueue<>(QUEUE_PER_THREAD * numThreads);
+        if(csv){
+            out.println("position,move,score,depth,nodes,timeMs");
+        }
+        Thread[] analysers = new Thread[numThreads];
+        for(int t = 0; t < numThreads; t++){
+            analysers[t] = new Thread(() -> analyse(queue, out));
+            analysers[t].start();
+        }
+        try{
+            try{
+                File file = new File(path);
+                if(path.equals("-")){
+                    readPositions("stdin", System.in, queue);
+                }
+                else if(file.isDirectory()){
+                    //The directory is listed lazily too
+                    try(DirectoryStream<Path> files = Files.newDirectoryStream(file.toPath())){
+                        for(Path entry : files){
+                            if(Files.isRegularFile(entry)){
+                                try(InputStream input = Files.newInputStream(entry)){
+                                    readPositions(entry.getFileName().toString(), input, queue);
+                                }
+                            }
+                        }
+                    }
+                }
+                else{
+                    try(InputStream input = new FileInputStream(file)){
+                        readPositions(file.getName(), input, queue);
+                    }
+                }
+            }
+            catch(IOException ex){
+                Logger.getLogger(BatchAnalyzer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            finally{
+                //One end mark per analysis thread, then wait for the last positions
+                for(int t = 0; t < numThreads; t++){
+                    queue.put(BatchJob.END);
+                }
+                for(Thread analyser : analysers){
+                    analyser.join();
+                }
+            }
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+
+    //Puts the positions of one source in the queue, waiting while it is full
+    private static void readPositions(String source, InputStream input, BlockingQueue<BatchJob> queue) throws InterruptedException{
+        Scanner in = new Scanner(input);
+        MoveRequest request;
+        for(int index = 0; (request = MoveRequest.read(in)) != null; index++){
+            queue.put(new BatchJob(source, index, request));
+        }
+    }
+
+    //Analyses the positions of the queue with one engine until an end mark
+    private void analyse(BlockingQueue<BatchJob> queue, PrintStream out){
+        SearchEngine engine = new SearchEngine(config.withThreads(1, null).withTtSizeBits(WORKER_TT_SIZE_BITS));
+        try{
+            BatchJob job;
+            while((job = queue.take()) != BatchJob.END){
+                long startNanos = System.nanoTime();
+                SearchResult result = engine.analyse(job.getRequest().getBoard(), maxDepth, moveTime);
+                double elapsedMs = (System.nanoTime() - startNanos) / NANOS_PER_MS;
+                String line = format(job.getId(), result, elapsedMs);
+                synchronized(out){
+                    out.println(line);
+                }
+            }
+        }
+        catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        finally{
+            engine.close();
+        }
+    }
+
+    //One line of results (no move for a finished game, no score if no depth was completed)
+    private String format(String id, SearchResult result, double elapsedMs){
+        String move = (result.getMove() == null) ? "" : result.getMove().toString();
+        boolean hasScore = !Double.isNaN(result.getValue());
+        long nodes = result.getStats().getNodes();
+        if(csv){
+            return id + "," + move + "," + (hasScore ? String.valueOf(result.getValue()) : "") + "," + result.getDepth() + "," + nodes + "," + String.format("%.3f", elapsedMs);
+        }
+        return "{\"position\":\"" + id + "\",\"move\":" + (move.isEmpty() ? "null" : "\"" + move + "\"")
+                + ",\"score\":" + (hasScore ? String.valueOf(result.getValue()) : "null") + ",\"depth\":" + result.getDepth()
+                + ",\"nodes\":" + nodes + ",\"timeMs\":" + String.format("%.3f", elapsedMs) + "}";
+    }
+}
+
+/********************************************************************************
+ * The homework class is the "main" class of the homework (the only public class)
+ * It contains the main function
+ ********************************************************************************/
+public class homework {
+    //Depth worth giving a move time for, largest share of the remaining time for one move, and the
+    //start up time of each move (seconds), when planning with a speed profile
+    private static final int MIN_USEFUL_DEPTH = 2;
+    private static final double MAX_MOVE_SHARE = 0.5;
+    private static final double MOVE_OVERHEAD = 0.1;
+    
+    
+    /**
+     * generateNewState replaces all items of the connected component from the
+     * selected board position, applies gravity, and returns a new node
+     * @param currentNode the input Node
+     * @param selectedCompIndex the index of the actions list to generate new node with
+     * @return thew new Node after replacing selected cell, its Connected Comp. and applying gravity
+     */
+    public static Node generateNewNode(Node currentNode, int selectedCompIndex){
+        //Get the list of Connected Components of the Node
+        ActionList actionsList = currentNode.getActionsList();
+        //If you are at an empyt assignment (terminal node) return null
+        if(actionsList.isEmpty()){
+            return null;
+        }
+        //Generate new State for new node (a copy of the state of current Node)
+        Board newState = currentNode.getState().copy();
+        /*********************REMOVE CONNECTED COMPONENT AND APPLY GRAVITY*******************/
+        //Remove the selected component (actions list in order of size)
+        int removedInCol = newState.removeComponent(actionsList.getCells(selectedCompIndex), actionsList.getStart(selectedCompIndex), actionsList.getComponentSize(selectedCompIndex));
+        /*********************CALCULATE VALUE AND GENERATE NODES*******************/
+        Node newNode = new Node();
+        loadChildNode(newNode, currentNode, newState, selectedCompIndex, removedInCol, new ComponentLabeller());
+        return newNode;
+    }
+    
+    /**
+     * loadChildNode loads a child node with the other player to move and the value of the
+     * removed component added to the running sum of the player who removed it
+     * @param newNode the node to load
+     * @param currentNode the parent node
+     * @param newState the state after removing the component and applying gravity
+     * @param selectedCompIndex the index of the removed component in the parent's actions list
+     * @param removedInCol the bit mask of the columns touched by the removal
+     * @param labeller the labeller generating the actions list of the child
+     */
+    public static void loadChildNode(Node newNode, Node currentNode, Board newState, int selectedCompIndex, int removedInCol, ComponentLabeller labeller){
+        //Get selected component Score and initialize other value parameters
+        int currCompValue = currentNode.getActionsList().componentScore(selectedCompIndex);
+        //If the current player is MAX, add value of component removed to MAX's running sum
+        if(currentNode.getPlayer().contentEquals("MAX")){
+            newNode.loadChild(currentNode, removedInCol, newState, currentNode.getMaxValue() + currCompValue, currentNode.getMinValue(), "MIN", labeller);
+        }
+        //If the current player is MIN, add value of component removed to MIN's running sum
+        else{
+            newNode.loadChild(currentNode, removedInCol, newState, currentNode.getMaxValue(), currentNode.getMinValue() + currCompValue, "MAX", labeller);
+        }
+    }
+    
+    /*********************ALPHA-BETA PRUNNING*******************/
+
+    /**
+     * cutOffSearch tests whether the current node meets the termination requirements
+     * @param newNode the node being tested
+     * @param maxDepth the maximum depth of search
+     * @return true iff we are at terminating conditions (leaf node or max depth)
+     */
+    public static boolean cutOffSearch(Node newNode, int maxDepth){
+        return ((newNode.getActionsList().isEmpty()) || (newNode.getDepth() >= maxDepth));
+    }
+    
+    /**
+     * printNode is a test method to print Nodes and other relevant information
+     * @param selectedMove 
+     * @param node 
+     */
+    public static void printNode(ConnectedComponent selectedMove, Node node){
+        //Print selected Move (BoardPosition.toString())
+        if(selectedMove != null){System.out.println("The selected Component: " + selectedMove.toString());}
+            char[] intToChar = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+            for(int i = 0; i < node.getState().getSize(); i++){
+                System.out.print(intToChar[i]);
+            }
+            System.out.println();
+            //Print Board after the move and applying gravity
+            for(int i = 0; i < node.getState().getSize(); i ++){
+                System.out.println(node.getState().rowToString(i));
+            }
+            System.out.println("The player type of the node is: " + node.getPlayer());
+            System.out.println("The depth of this node is: " + node.getDepth());
+            System.out.println("The number of Connected Components is: " + node.getActionsList().size());
+            System.out.println("The actions list of this Node is: " + node.getActionsList());
+            System.out.println("The Max Value of the Node is:" + node.getMaxValue());
+            System.out.println("The Min Value of the Node is:" + node.getMinValue());
+            System.out.println("The Terminal Value of the Node is:" + node.getTerminalValue());
+            System.out.println("The Potential Max Value of the Node is:" + node.getMaxPotential());
+            System.out.println("The Potential Min Value of the Node is:" + node.getMinPotential());
+            System.out.println();
+    }
+    
+    /**
+     * printOutput prints the  output into an output file in the requested format
+     * @param selectedMove the board cell selected by the AI
+     * @param newBoard the board after the selected cell and its connected component
+     * has been removed from the board and gravity has been applied
+     */
+    public static void printOutput(String selectedMove, Board newBoard){
+        printMove(System.out, selectedMove, newBoard);
+    }
+
+    /**
+     * printMove prints the output to a stream in the requested format
+     * @param out the stream to print to
+     * @param selectedMove the board cell selected by the AI
+     * @param newBoard the board after the selected cell and its connected component
+     * has been removed from the board and gravity has been applied
+     */
+    public static void printMove(PrintStream out, String selectedMove, Board newBoard){
+        //Print selected Move (BoardPosition.toString())
+        out.println(selectedMove);
+        //Print Board after the move and applying gravity
+        for(int i = 0; i < newBoard.getSize(); i ++){
+            out.println(newBoard.rowToString(i));
+        }
+    }
+    
+    /**
+     * printOutFile prints the  output into an output file in the requested format
+     * @param selectedMove the board cell selected by the AI
+     * @param newBoard the board after the selected cell and its connected component
+     * has been removed from the board and gravity has been applied
+     */
+    public static void printOutFile(String selectedMove, Board newBoard){
+        PrintStream outputFileStream = null;
+        try {
+            outputFileStream = new PrintStream( new FileOutputStream("output.txt"));
+        } catch (FileNotFoundException ex) {
+            Logger.getLogger(homework.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        //Print selected Move (BoardPosition.toString())
+        outputFileStream.println(selectedMove);
+        //Print Board after the move and applying gravity
+        for(int i = 0; i < newBoard.getSize(); i ++){
+            outputFileStream.println(newBoard.rowToString(i));
+        }
+    }
+    
+    /**
+     * timeAllocation generates the allocated time for the current configuration
+     * @param fruitNumArray
+     * @param boardSize the size of the board
+     * @param remainingTime the remaining time
+     * @param numEmpty the number of empty cells
+     * @param numComponents the number of components (for branching factor approximation)
+     * @param profile the speed profile of this machine, or null if it was not calibrated
+     * @return the allocated amount of seconds for the current run
+     */
+    public static double timeAllocation(int[] fruitNumArray, int boardSize, double remainingTime, int numEmpty, int numComponents, SpeedProfile profile){
+        //Calculate the average amount of fruits per fruit type
+        double allocatedTime;
+        double mean;
+        double variance;
+        double stdev;
+        double tempVariance = 0.0;
+        double sum = 0.0;
+        int fruitCount = 0;
+        double coeffOfVar;
+        //Calculate the sum
+        for(int i = 0; i < fruitNumArray.length; i++){
+            sum+= fruitNumArray[i];
+            if(fruitNumArray[i] != 0){
+                fruitCount++;
+            }
+        }
+        //calculate the mean
+        mean = (double) sum / fruitCount;
+        //Calculate the variance
+        for(int i = 0; i < fruitNumArray.length; i++){
+            if(fruitNumArray[i] != 0){
+                tempVariance+= Math.pow(fruitNumArray[i] - mean, 2);
+            }
+        }
+        //Calculate Variance
+        variance = tempVariance / fruitCount;
         //Calculate the stdev
         stdev = Math.sqrt(variance);
         //Calculate the coefficient of variance
@@ -801,107 +5146,180 @@ public class homework {
         if(allocatedTime / remainingTime < 0.03){
             allocatedTime = remainingTime * 0.03;
         }
+        //With the speed of this machine known, give the move enough time for a useful depth, but
+        //keep enough for every remaining move to be searched at least one ply deep
+        if(profile != null){
+            double nodesPerSec = profile.nodesPerSec(boardSize, numComponents);
+            double branchingFactor = profile.branchingFactor(boardSize, numComponents);
+            double usefulTime = numComponents * Math.pow(branchingFactor, MIN_USEFUL_DEPTH - 1) / nodesPerSec;
+            allocatedTime = Math.max(allocatedTime, Math.min(usefulTime, remainingTime * MAX_MOVE_SHARE));
+            double onePlyTime = numComponents / nodesPerSec;
+            double reserveTime = numCompMax * (onePlyTime + MOVE_OVERHEAD);
+            allocatedTime = Math.min(allocatedTime, Math.max(remainingTime - reserveTime, onePlyTime));
+        }
         return allocatedTime;
     }
     
     public static void main(String[] args) {
-        //Initialize number of empty cells to zero
-        numEmpty = 0;
-        //Get the Start Time (ms) for speed calculation
-        double startTime = System.currentTimeMillis();
+        //Benchmark mode (command line: -bench) instead of playing the input file
+        if(Arrays.asList(args).contains("-bench")){
+            SearchBenchmark.run(args);
+            return;
+        }
+        //Number of search threads (command line: -threads N), all cores by default
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        //Search statistics file (command line: -stats FILE, or -stats - for standard error), none by default
+        String statsFile = null;
+        //Speed profile file (command line: -profile FILE)
+        String profileFile = SpeedProfile.DEFAULT_FILE;
+        //Daemon socket port and client mode port (-1 for none)
+        int daemonPort = -1;
+        int clientPort = -1;
+        //Batch analysis corpus, depth or time (milliseconds) per position (0 for no limit, one
+        //second each if neither is given), results file (standard output by default) and format (jsonl or csv)
+        String batchPath = null;
+        int batchDepth = 0;
+        double batchTime = 0;
+        String batchOutFile = null;
+        String batchFormat = "jsonl";
+        //Largest number of components and of fruits of a position solved exactly to the end of
+        //the game, both must be small enough (command line: -endgame N and -endgameFruits N, 0 to never solve)
+        int endgameComponents = SearchConfig.DEFAULT_ENDGAME_COMPONENTS;
+        int endgameFruits = SearchConfig.DEFAULT_ENDGAME_FRUITS;
+        //Engine choosing the moves (command line: -engine alphabeta|mcts|auto)
+        String engineName = SearchConfig.ENGINE_ALPHA_BETA;
+        //File keeping the transposition table between runs (command line: -cache FILE), none by default
+        String cacheFile = null;
+        //Selective search (command line: -lmr N, moves searched in full before the late ones are
+        //reduced, and -width N, moves searched at a node; both off by default)
+        int lateMoves = SearchConfig.DEFAULT_LATE_MOVES;
+        int widthCap = SearchConfig.DEFAULT_WIDTH_CAP;
+        for(int i = 0; i + 1 < args.length; i++){
+            if(args[i].equals("-threads")){
+                numThreads = Math.max(1, Integer.parseInt(args[i + 1]));
+            }
+            else if(args[i].equals("-stats")){
+                statsFile = args[i + 1];
+            }
+            else if(args[i].equals("-profile")){
+                profileFile = args[i + 1];
+            }
+            else if(args[i].equals("-port")){
+                daemonPort = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-client")){
+                clientPort = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-batch")){
+                batchPath = args[i + 1];
+            }
+            else if(args[i].equals("-depth")){
+                batchDepth = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-movetime")){
+                batchTime = Double.parseDouble(args[i + 1]);
+            }
+            else if(args[i].equals("-out")){
+                batchOutFile = args[i + 1];
+            }
+            else if(args[i].equals("-format")){
+                batchFormat = args[i + 1];
+            }
+            else if(args[i].equals("-endgame")){
+                endgameComponents = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-endgameFruits")){
+                endgameFruits = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-engine")){
+                engineName = args[i + 1];
+            }
+            else if(args[i].equals("-cache")){
+                cacheFile = args[i + 1];
+            }
+            else if(args[i].equals("-lmr")){
+                lateMoves = Integer.parseInt(args[i + 1]);
+            }
+            else if(args[i].equals("-width")){
+                widthCap = Integer.parseInt(args[i + 1]);
+            }
+        }
+        //Calibration mode (command line: -calibrate): measure and save the speed profile
+        if(Arrays.asList(args).contains("-calibrate")){
+            SpeedProfile measured = SpeedProfile.calibrate();
+            measured.save(profileFile);
+            System.out.print(measured);
+            return;
+        }
+        //Speed profile of this machine, if it was calibrated
+        SpeedProfile profile = SpeedProfile.load(profileFile);
+        //Client mode (command line: -client PORT): play input.txt through a daemon
+        if(clientPort >= 0){
+            EngineDaemon.runClient(clientPort);
+            return;
+        }
+        //Get the Start Time, the allocated time is counted from it
+        long startNanos = System.nanoTime();
         //Read input file from current directory                   
         //Store file and pass to new Scanner object for reading
         File inputFile = new File("input.txt");
         
         try {
-            //Instantiate Scanner and pass the input file
-            Scanner in = new Scanner(inputFile);
-            //Read first line (width and height) of the of the square board (<= 26)
-            int boardSize = in.nextInt();
-            //Read the second line of the board, the number of fruit types (<=9)
-            int fruitTypes = in.nextInt();
-            //array to store number of each type of fruit
-            int[] fruitNumArray = new int[10];
-            //Read the third line of the board, the remaining time in seconds
-            double remainingTime = in.nextDouble();
-            //Consume line to start looping through array
-            in.nextLine();
-            //Instantiate a new 2D array to store board configuration
-            int[][] inputBoard = new int[boardSize][boardSize];
-            //Read file into inputBoard array
-            for(int i = 0; i < boardSize; i++){
-                //Read line by line and store data in array
-                String nextRow = in.nextLine();
-                //Read each column value, convert character to int
-                for(int j = 0; j < boardSize; j++){
-                    if(nextRow.charAt(j) == '*'){
-                        //increment the number of empty cells
-                        numEmpty++;
-                        inputBoard[i][j] = EMPTY_CELL;
-                    }
-                    else{
-                        inputBoard[i][j] = Character.getNumericValue(nextRow.charAt(j));
-                        fruitNumArray[inputBoard[i][j]]++;
-                    }
+            //One JSON line of search statistics per iteration, appended to the stats file (only if asked for)
+            PrintStream statsOut = (statsFile == null) ? null
+                    : statsFile.equals("-") ? System.err : new PrintStream(new FileOutputStream(statsFile, true), true);
+            //Batch analysis starts every position from an empty table, so it does not use the cache file
+            SearchConfig config = new SearchConfig(numThreads, SearchConfig.DEFAULT_TT_SIZE_BITS, profile, statsOut)
+                    .withEndgameComponents(endgameComponents)
+                    .withEndgameFruits(endgameFruits)
+                    .withEngine(engineName)
+                    .withCacheFile((batchPath == null) ? cacheFile : null)
+                    .withLateMoves(lateMoves)
+                    .withWidthCap(widthCap);
+            //Batch mode (command line: -batch DIR|FILE|-, with -depth N or -movetime MS, -out FILE
+            //and -format jsonl|csv): analyse a corpus of positions on all the search threads
+            if(batchPath != null){
+                PrintStream batchOut = (batchOutFile == null) ? System.out : new PrintStream(new FileOutputStream(batchOutFile), false);
+                BatchAnalyzer analyzer = new BatchAnalyzer(config.withThreads(numThreads, null), batchDepth, batchTime, batchFormat.equals("csv"));
+                analyzer.run(batchPath, batchOut);
+                if(batchOut != System.out){
+                    batchOut.close();
                 }
+                return;
             }
-            //Generate root node, set to MAX
-            Node newNode = new Node(inputBoard,0,0,0, "MAX");
-            //Time allocation calculations 
-            double allocatedTime = timeAllocation(fruitNumArray, boardSize, remainingTime, numEmpty, newNode.getNumChildren()) * SEC_TO_MS;
-            //Calculate total time
-            double totalTime = startTime + allocatedTime;
-            //Set initial maximum depth to 0
-            int maxDepth = 0;
-            //Previous best index
-            int previousBest = 0;
-            //If only one action possible, return that action
-            if(newNode.getActionsList().size() == 1){
-                bestIndex = 0;
-            }
-            /***********************ITERATIVE DEEPENING***********************/
-            else{
-                while(timeLeft && maxDepth < GLOBAL_MAX_DEPTH){
-                    //Increment the maximum depth
-                    maxDepth++;
-                    //check if time allocated is over
-                    double currentTime = System.currentTimeMillis();
-                    if(currentTime >= totalTime){
-                        timeLeft = false;
-                        break;
-                    }
-                    //Apply Alpha-Beta Prunning to the node, get index of best action
-                    alphaBetaResult = alphaBeta(newNode,NEG_INFINITY,INFINITY, maxDepth, totalTime);
-                    //If the result is negative infinity, return the best index of the previous iteration
-                    if(alphaBetaResult == NEG_INFINITY){
-                        bestIndex = previousBest;
-                        maxDepth--;
-                        break;
-                    }
-                    else{
-                        //Store the value of the best index in current iteration
-                        previousBest = bestIndex;
-                    }
+            //Daemon mode (command line: -daemon, with -port PORT for a local socket instead of standard input,
+            //and -ponder to search on the opponent's time)
+            if(Arrays.asList(args).contains("-daemon")){
+                EngineDaemon daemon = new EngineDaemon(config, Arrays.asList(args).contains("-ponder"));
+                daemon.warmUp();
+                if(daemonPort >= 0){
+                    daemon.serveSocket(daemonPort);
+                }
+                else{
+                    daemon.serve(System.in, System.out);
                 }
+                return;
             }
-            //Generate node with given result index
-            Node bestNode = generateNewNode(newNode, bestIndex);
-            //Get Board Position within selected Connected Component of best action (first element, for example)
-            BoardPosition selectedBP = newNode.getActionsList().get(bestIndex).getBoardPosition(0);
+            //Instantiate Scanner and pass the input file
+            Scanner in = new Scanner(inputFile);
+            MoveRequest request = MoveRequest.read(in);
+            if(request == null){
+                Logger.getLogger(homework.class.getName()).log(Level.SEVERE, "input.txt does not hold a valid position");
+                return;
+            }
+            SearchEngine engine = new SearchEngine(config);
+            SearchResult result = engine.search(request.getBoard(), request.getRemainingTime(), startNanos);
+            engine.close();
+            //A finished game has no move: print an empty move and the board as it is
+            String move = (result.getMove() == null) ? "" : result.getMove().toString();
+            Board nextState = (result.getMove() == null) ? request.getBoard() : result.getNextState();
             //print result
-            printOutput(selectedBP.toString(), bestNode.getState());
+            printOutput(move, nextState);
             //print to output file in current directory
-            printOutFile(selectedBP.toString(), bestNode.getState());
-   
-            
-            //TEST******************************************************
-            System.out.println("The max depth reached is: " + maxDepth);
-            System.out.println("The number of generated nodes: " + numNodes);
-
-            double endTime = System.currentTimeMillis();
-            
-            System.out.println("Total Time spent: " + (endTime - startTime) + " ms");
-            System.out.println("Nodes/sec: " + numNodes / ((endTime - startTime) / 1000));
+            printOutFile(move, nextState);
+            if(statsOut != null && statsOut != System.err){
+                statsOut.close();
+            }
         } 
         
         catch (FileNotFoundException ex) {
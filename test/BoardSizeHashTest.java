@@ -0,0 +1,62 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*******************************************************************************
+ * The BoardSizeHashTest class checks that positions of two board sizes do not
+ * share cache entries. Cells are numbered relative to the board size, so the
+ * 6x6 and 5x5 boards below hold the same fruits at the same cell indices; the
+ * 5x5 search must find the same value after the 6x6 one as on an empty table,
+ * and so must the endgame solver after solving the 6x6 board.
+ * Run from the repository root (exits with status 1 on a failure):
+ *     javac -d out homework.java test/BoardSizeHashTest.java
+ *     java -cp out BoardSizeHashTest
+ *******************************************************************************/
+public class BoardSizeHashTest{
+    private static final int SEARCH_DEPTH = 8;
+    private static final int TABLE_SIZE_BITS = 16;
+    //Fruits by cell index (column-major, from the bottom of each column)
+    private static final int[] FRUITS = {2, 1, 0, 1, 0, 1, 2, 3, 2, 2};
+
+    public static void main(String[] args){
+        Board large = boardOf(6);
+        Board small = boardOf(5);
+        boolean passed = true;
+        if(large.getCanonicalKey() == small.getCanonicalKey()){
+            System.out.println("FAIL: the 6x6 and 5x5 boards have the same key");
+            passed = false;
+        }
+        TranspositionTable shared = new TranspositionTable(TABLE_SIZE_BITS);
+        search(shared, large);
+        int sharedValue = search(shared, small);
+        int freshValue = search(new TranspositionTable(TABLE_SIZE_BITS), small);
+        if(sharedValue != freshValue){
+            System.out.println("FAIL: 5x5 value " + sharedValue + " after a 6x6 search, " + freshValue + " on an empty table");
+            passed = false;
+        }
+        EndgameSolver solver = new EndgameSolver(TABLE_SIZE_BITS);
+        solver.solve(large, Deadline.none(), new SearchStats());
+        int sharedSolved = solver.solve(small, Deadline.none(), new SearchStats());
+        int freshSolved = new EndgameSolver(TABLE_SIZE_BITS).solve(small, Deadline.none(), new SearchStats());
+        if(sharedSolved != freshSolved){
+            System.out.println("FAIL: 5x5 solved as " + sharedSolved + " after the 6x6 board, " + freshSolved + " by a new solver");
+            passed = false;
+        }
+        System.out.println(passed ? "PASS" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    //Board of a size holding FRUITS at the same cell indices
+    private static Board boardOf(int size){
+        Board board = new Board(size);
+        for(int cell = 0; cell < FRUITS.length; cell++){
+            board.set(size - 1 - cell % size, cell / size, FRUITS[cell]);
+        }
+        return board;
+    }
+
+    //Value of an alpha-beta search of a board to SEARCH_DEPTH on a table
+    private static int search(TranspositionTable table, Board board){
+        SearchWorker worker = new SearchWorker(0, table, new AtomicBoolean());
+        Node root = new Node(board, 0, 0, 0, "MAX");
+        return worker.alphaBeta(root, SearchWorker.NEG_INFINITY, SearchWorker.INFINITY, SEARCH_DEPTH, Deadline.none());
+    }
+}